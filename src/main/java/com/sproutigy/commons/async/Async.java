@@ -1,5 +1,9 @@
 package com.sproutigy.commons.async;
 
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.util.Collection;
 import java.util.WeakHashMap;
 import java.util.concurrent.*;
@@ -9,27 +13,37 @@ public final class Async {
     private Async() {
     }
 
-    private static ExecutorService executorService;
+    private static Object log = OptionalLogger.getLogger(Async.class);
+
+    public static final String SCHEDULER_PROPERTY = "com.sproutigy.commons.async.Async.scheduler";
+    public static final String SCHEDULER_HASHED_WHEEL = "wheel";
+
+    public static final String EXECUTOR_PROPERTY = "com.sproutigy.commons.async.Async.executor";
+    public static final String EXECUTOR_CACHED = "cached";
+    public static final String EXECUTOR_WORK_STEALING = "forkjoin";
+    public static final String EXECUTOR_BOUNDED = "bounded";
+    public static final String EXECUTOR_VIRTUAL = "virtual";
+    public static final String PARALLELISM_PROPERTY = "com.sproutigy.commons.async.Async.parallelism";
+    public static final String QUEUE_CAPACITY_PROPERTY = "com.sproutigy.commons.async.Async.queueCapacity";
+
+    public static final int DEFAULT_QUEUE_CAPACITY = 10000;
+
+    private static volatile ExecutorService executorService;
     private static ScheduledThreadPoolExecutor scheduler;
+    private static volatile HashedWheelScheduler wheelScheduler;
 
-    static {
-        executorService = new ThreadPoolExecutor(
-                0, Integer.MAX_VALUE,
-                60L, TimeUnit.SECONDS,
-                new SynchronousQueue<Runnable>(),
-                new ThreadFactory() {
-                    AtomicInteger counter = new AtomicInteger();
-
-                    @Override
-                    public Thread newThread(Runnable r) {
-                        Thread thread = new Thread(r);
-                        thread.setName(Async.class.getSimpleName() + "-" + counter.incrementAndGet());
-                        thread.setPriority(Thread.NORM_PRIORITY - 1);
-                        thread.setDaemon(true);
-                        return thread;
-                    }
-                });
+    // Executors.newVirtualThreadPerTaskExecutor() on Java 21+, null on older runtimes
+    private static final MethodHandle VIRTUAL_THREAD_EXECUTOR_FACTORY = findVirtualThreadExecutorFactory();
+
+    // tasks scheduled before the executor is chosen must not force its creation
+    static final Executor EXECUTOR = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            Async.execute(command);
+        }
+    };
 
+    static {
         scheduler = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
             @Override
             public Thread newThread(Runnable r) {
@@ -41,18 +55,190 @@ public final class Async {
             }
         });
 
+        // timeouts are usually cancelled long before their delay, do not keep them queued
+        scheduler.setRemoveOnCancelPolicy(true);
+
         ShutdownOnExitHook.add(scheduler);
-        ShutdownOnExitHook.add(executorService);
 
-        executorService = new UnmodifiableExecutorService(executorService);
+        if (SCHEDULER_HASHED_WHEEL.equalsIgnoreCase(System.getProperty(SCHEDULER_PROPERTY))) {
+            wheelScheduler = new HashedWheelScheduler(EXECUTOR);
+        }
     }
 
     public static ExecutorService getService() {
-        return executorService;
+        ExecutorService service = executorService;
+        if (service == null) {
+            synchronized (Async.class) {
+                service = executorService;
+                if (service == null) {
+                    service = createDefaultService();
+                    executorService = service;
+                }
+            }
+        }
+        return service;
     }
 
     public static void execute(Runnable command) {
-        executorService.execute(command);
+        getService().execute(command);
+    }
+
+    public static boolean isConfigured() {
+        return executorService != null;
+    }
+
+    // unbounded pool spawning a thread per concurrent task, the historical default
+    public static void useCachedExecutor() {
+        configure(createCachedExecutor(), true);
+    }
+
+    // ForkJoinPool in async (FIFO) mode, awaiting workers are compensated by managed blocking
+    public static void useWorkStealingExecutor() {
+        useWorkStealingExecutor(Runtime.getRuntime().availableProcessors());
+    }
+
+    public static void useWorkStealingExecutor(int parallelism) {
+        configure(createWorkStealingExecutor(parallelism), true);
+    }
+
+    // fixed number of threads with a bounded queue, the submitting thread runs the task when the queue is full
+    public static void useBoundedExecutor(int threads, int queueCapacity) {
+        configure(createBoundedExecutor(threads, queueCapacity), true);
+    }
+
+    // a new virtual thread per task on Java 21+, falls back to the cached pool on older runtimes
+    public static void useVirtualThreadExecutor() {
+        configure(createVirtualThreadExecutor(), true);
+    }
+
+    public static boolean isVirtualThreadsSupported() {
+        return VIRTUAL_THREAD_EXECUTOR_FACTORY != null;
+    }
+
+    // caller keeps the ownership of the given executor, it is not shut down on exit
+    public static void useExecutor(ExecutorService executor) {
+        if (executor == null) {
+            throw new NullPointerException("executor");
+        }
+        configure(executor, false);
+    }
+
+    private static synchronized void configure(ExecutorService service, boolean owned) {
+        if (executorService != null) {
+            if (owned) {
+                service.shutdown();
+            }
+            throw new IllegalStateException("Async executor already in use, it has to be configured before first use");
+        }
+        if (owned) {
+            ShutdownOnExitHook.add(service);
+        }
+        executorService = new UnmodifiableExecutorService(service);
+    }
+
+    private static ExecutorService createDefaultService() {
+        String type = System.getProperty(EXECUTOR_PROPERTY, EXECUTOR_CACHED);
+        int parallelism = Integer.getInteger(PARALLELISM_PROPERTY, Runtime.getRuntime().availableProcessors());
+
+        ExecutorService service;
+        if (EXECUTOR_WORK_STEALING.equalsIgnoreCase(type)) {
+            service = createWorkStealingExecutor(parallelism);
+        } else if (EXECUTOR_BOUNDED.equalsIgnoreCase(type)) {
+            service = createBoundedExecutor(parallelism, Integer.getInteger(QUEUE_CAPACITY_PROPERTY, DEFAULT_QUEUE_CAPACITY));
+        } else if (EXECUTOR_VIRTUAL.equalsIgnoreCase(type)) {
+            service = createVirtualThreadExecutor();
+        } else {
+            if (!EXECUTOR_CACHED.equalsIgnoreCase(type)) {
+                OptionalLogger.warn(log, "Unknown Async executor type {}, using {}", type, EXECUTOR_CACHED);
+            }
+            service = createCachedExecutor();
+        }
+
+        ShutdownOnExitHook.add(service);
+        return new UnmodifiableExecutorService(service);
+    }
+
+    private static ExecutorService createCachedExecutor() {
+        return new ThreadPoolExecutor(
+                0, Integer.MAX_VALUE,
+                60L, TimeUnit.SECONDS,
+                new SynchronousQueue<Runnable>(),
+                new AsyncThreadFactory());
+    }
+
+    private static ExecutorService createVirtualThreadExecutor() {
+        if (VIRTUAL_THREAD_EXECUTOR_FACTORY == null) {
+            OptionalLogger.info(log, "Virtual threads not supported by Java {}, using {} executor", System.getProperty("java.version"), EXECUTOR_CACHED);
+            return createCachedExecutor();
+        }
+        try {
+            return (ExecutorService) VIRTUAL_THREAD_EXECUTOR_FACTORY.invoke();
+        } catch (Throwable e) {
+            OptionalLogger.warn(log, "Could not create virtual thread executor, using {} executor", EXECUTOR_CACHED, e);
+            return createCachedExecutor();
+        }
+    }
+
+    // looked up reflectively, so the library still compiles and runs on Java 8
+    private static MethodHandle findVirtualThreadExecutorFactory() {
+        try {
+            return MethodHandles.publicLookup().findStatic(Executors.class, "newVirtualThreadPerTaskExecutor",
+                    MethodType.methodType(ExecutorService.class));
+        } catch (NoSuchMethodException | IllegalAccessException ignore) {
+            return null;
+        }
+    }
+
+    private static ExecutorService createWorkStealingExecutor(int parallelism) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("parallelism must be greater than 0");
+        }
+        return new ForkJoinPool(parallelism, new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+            AtomicInteger counter = new AtomicInteger();
+
+            @Override
+            public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+                ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                thread.setName(Async.class.getSimpleName() + "-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        }, new Thread.UncaughtExceptionHandler() {
+            @Override
+            public void uncaughtException(Thread t, Throwable e) {
+                OptionalLogger.error(log, "Uncaught exception in {}", t.getName(), e);
+            }
+        }, true);
+    }
+
+    private static ExecutorService createBoundedExecutor(int threads, int queueCapacity) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("threads must be greater than 0");
+        }
+        if (queueCapacity <= 0) {
+            throw new IllegalArgumentException("queueCapacity must be greater than 0");
+        }
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                threads, threads,
+                60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(queueCapacity),
+                new AsyncThreadFactory(),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private static class AsyncThreadFactory implements ThreadFactory {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r);
+            thread.setName(Async.class.getSimpleName() + "-" + counter.incrementAndGet());
+            thread.setPriority(Thread.NORM_PRIORITY - 1);
+            thread.setDaemon(true);
+            return thread;
+        }
     }
 
     public static boolean isShuttingDown() {
@@ -60,7 +246,23 @@ public final class Async {
     }
 
 
+    public static synchronized void useHashedWheelScheduler(long tickDuration, TimeUnit unit, int ticksPerWheel) {
+        if (wheelScheduler != null) {
+            throw new IllegalStateException("Hashed wheel scheduler already in use");
+        }
+        wheelScheduler = new HashedWheelScheduler(tickDuration, unit, ticksPerWheel, EXECUTOR);
+    }
+
+    public static boolean isHashedWheelScheduler() {
+        return wheelScheduler != null;
+    }
+
     public static ScheduledFuture<?> schedule(final Runnable command, long delay, TimeUnit unit) {
+        HashedWheelScheduler wheel = wheelScheduler;
+        if (wheel != null) {
+            return wheel.schedule(command, delay, unit);
+        }
+
         return scheduler.schedule(new Runnable() {
             @Override
             public void run() {
@@ -70,6 +272,11 @@ public final class Async {
     }
 
     public static ScheduledFuture<?> scheduleAtFixedRate(final Runnable command, long initialDelay, long period, TimeUnit unit) {
+        HashedWheelScheduler wheel = wheelScheduler;
+        if (wheel != null) {
+            return wheel.scheduleAtFixedRate(command, initialDelay, period, unit);
+        }
+
         return scheduler.scheduleAtFixedRate(new Runnable() {
             @Override
             public void run() {
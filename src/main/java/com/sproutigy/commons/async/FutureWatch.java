@@ -3,32 +3,81 @@ package com.sproutigy.commons.async;
 import com.google.common.util.concurrent.ListenableFuture;
 import io.netty.util.concurrent.FutureListener;
 
-import java.util.Collection;
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BiConsumer;
 
 public final class FutureWatch {
     private FutureWatch() {
     }
 
+    private static Object log = OptionalLogger.getLogger(FutureWatch.class);
+
     private static class Entry<V> {
-        Future<V> future;
-        ExecutionCallback<V> callback;
-        boolean needWait;
+        private static final AtomicIntegerFieldUpdater<Entry> CLAIMED =
+                AtomicIntegerFieldUpdater.newUpdater(Entry.class, "claimed");
+
+        final Future<V> future;
+        final ExecutionCallback<V> callback;
+        private volatile int claimed;
 
-        public Entry(Future<V> future, ExecutionCallback<V> callback, boolean needWait) {
+        public Entry(Future<V> future, ExecutionCallback<V> callback) {
             this.future = future;
             this.callback = callback;
-            this.needWait = needWait;
+        }
+
+        // registry key: identity of both future and callback
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Entry)) {
+                return false;
+            }
+            Entry other = (Entry) o;
+            return future == other.future && callback == other.callback;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(future) + System.identityHashCode(callback);
+        }
+
+        // either completion or unlisten wins, only once
+        boolean claim() {
+            return CLAIMED.compareAndSet(this, 0, 1);
+        }
+
+        boolean isClaimed() {
+            return claimed != 0;
         }
     }
 
+    public static final String POLLERS_PROPERTY = "com.sproutigy.commons.async.FutureWatch.pollers";
+
     private static final ExecutorService CALLBACK_EXECUTOR = Executors.newCachedThreadPool();
 
-    private static final Collection<Entry> ENTRIES = new LinkedList<>();
+    public static final Executor DIRECT_EXECUTOR = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private static volatile Executor listenableFutureExecutor = DIRECT_EXECUTOR;
 
-    private static final int WAIT_INITIAL_TIME_MILLIS = 30;
-    private static final int WAIT_LOOP_TIME_MILLIS = 15;
+    private static final ConcurrentMap<Entry, Entry> ENTRIES = new ConcurrentHashMap<>();
+
+    // polling interval grows from min to max while no watched future completes
+    private static final long POLL_MIN_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    private static final long POLL_MAX_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+
+    private static final Poller[] POLLERS;
+    private static final AtomicInteger pollerSelector = new AtomicInteger();
 
     private static boolean isGuava = false;
     private static boolean isJava8 = false;
@@ -50,167 +99,282 @@ public final class FutureWatch {
         }
     }
 
-    @SuppressWarnings("unchecked")
-    private static Thread thread = new Thread(new Runnable() {
+    static {
+        int defaultPollers = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+        POLLERS = new Poller[Math.max(1, Integer.getInteger(POLLERS_PROPERTY, defaultPollers))];
+        for (int i = 0; i < POLLERS.length; i++) {
+            POLLERS[i] = new Poller(i + 1);
+        }
+    }
+
+    // watches futures without listening support by sweeping their isDone() state, never blocks on get()
+    private static final class Poller implements Runnable {
+        private final int index;
+        private final ConcurrentLinkedQueue<Entry> incoming = new ConcurrentLinkedQueue<>();
+        private final ArrayList<Entry> watched = new ArrayList<>();
+        private volatile Thread thread;
+        private volatile boolean parked;
+
+        Poller(int index) {
+            this.index = index;
+        }
+
+        void add(Entry entry) {
+            incoming.add(entry);
+
+            Thread current = thread;
+            if (current == null) {
+                current = start();
+            }
+            if (parked) {
+                LockSupport.unpark(current);
+            }
+        }
+
+        private synchronized Thread start() {
+            if (thread == null) {
+                Thread newThread = new Thread(this);
+                newThread.setName("future-callback-" + index);
+                newThread.setDaemon(true);
+                newThread.start();
+                thread = newThread;
+            }
+            return thread;
+        }
+
         @Override
+        @SuppressWarnings("unchecked")
         public void run() {
-            try {
-                while (true) {
-                    Entry[] entries = null;
-                    synchronized (ENTRIES) {
-                        if (ENTRIES.size() > 0) {
-                            entries = new Entry[ENTRIES.size()];
-                            ENTRIES.toArray(entries);
-                        } else {
-                            ENTRIES.wait();
-                        }
+            long backoff = POLL_MIN_NANOS;
+            while (true) {
+                Entry entry;
+                while ((entry = incoming.poll()) != null) {
+                    watched.add(entry);
+                    backoff = POLL_MIN_NANOS;
+                }
+
+                if (!watched.isEmpty()) {
+                    if (sweep() > 0) {
+                        backoff = POLL_MIN_NANOS;
+                    } else {
+                        backoff = Math.min(backoff << 1, POLL_MAX_NANOS);
                     }
+                }
 
-                    if (entries != null) {
-                        for (int i = 0; i < entries.length; i++) {
-                            Entry entry = entries[i];
-                            if (entry.needWait) {
-                                if (tryHandle(WAIT_LOOP_TIME_MILLIS, entry.future, entry.callback)) {
-                                    synchronized (ENTRIES) {
-                                        ENTRIES.remove(entry);
-                                    }
-                                }
-                            }
-                        }
+                parked = true;
+                if (incoming.isEmpty()) {
+                    if (watched.isEmpty()) {
+                        LockSupport.park(this);
+                    } else {
+                        LockSupport.parkNanos(this, backoff);
                     }
                 }
-            } catch (InterruptedException ignored) {
+                parked = false;
             }
         }
-    });
 
-    static {
-        thread.setName("future-callback");
-        thread.setDaemon(true);
-        thread.start();
+        @SuppressWarnings("unchecked")
+        private int sweep() {
+            int completed = 0;
+            int i = 0;
+            while (i < watched.size()) {
+                Entry entry = watched.get(i);
+                if (entry.isClaimed() || entry.future.isDone()) {
+                    int last = watched.size() - 1;
+                    watched.set(i, watched.get(last));
+                    watched.remove(last);
+
+                    if (entry.claim()) {
+                        deregisterEntry(entry);
+                        handleDone(entry.future, entry.callback, true);
+                        completed++;
+                    }
+                } else {
+                    i++;
+                }
+            }
+            return completed;
+        }
     }
 
     public static <V> void listen(final Future<V> future, final ExecutionCallback<V> callback) {
         if (future instanceof Promise) {
-            ((Promise<V>) future).onFulfill(new Callback<V>() {
+            final Promise<V> promise = (Promise<V>) future;
+            final Entry<V> entry = new Entry<>(future, callback);
+            if (!registerEntry(entry)) {
+                return;
+            }
+            promise.onDone(new Callback<V>() {
                 @Override
                 public void onCallback(V value) throws Exception {
-                    callback.callback(ExecutionCallback.Result.Success, value, null);
+                    if (entry.claim()) {
+                        deregisterEntry(entry);
+                        callback.callback(ExecutionCallback.Result.Success, value, null);
+                    }
                 }
-            });
-            ((Promise<V>) future).onReject(new Callback<Throwable>() {
+            }, new Callback<Throwable>() {
                 @Override
                 public void onCallback(Throwable cause) throws Exception {
-                    callback.callback(ExecutionCallback.Result.Failure, null, cause);
+                    if (entry.claim()) {
+                        deregisterEntry(entry);
+                        ExecutionCallback.Result result = promise.isCancelled() ? ExecutionCallback.Result.Cancelled : ExecutionCallback.Result.Failure;
+                        callback.callback(result, null, cause);
+                    }
                 }
             });
-            //TODO: unlisten support
             return;
         }
 
+        // futures with native listening support call back directly, without registry entry and thread hop,
+        // so unlisten() does not apply to them
         if (isGuava) {
             if (future instanceof ListenableFuture) {
-                final Entry entry = new Entry<>(future, callback, false);
-                registerEntry(entry);
-                ((ListenableFuture) future).addListener(
-                        createCompletionHandler(entry, future, callback), CALLBACK_EXECUTOR
-                );
+                ((ListenableFuture<V>) future).addListener(new Runnable() {
+                    @Override
+                    public void run() {
+                        handleDone(future, callback, false);
+                    }
+                }, listenableFutureExecutor);
                 return;
             }
         }
 
         if (isJava8) {
             if (future instanceof CompletionStage) {
-                final Entry entry = new Entry<>(future, callback, false);
-                registerEntry(entry);
-                ((CompletionStage) future).thenRun(
-                        createCompletionHandler(entry, future, callback)
-                );
+                // a future that is also a completion stage completes both with the same value
+                @SuppressWarnings("unchecked")
+                CompletionStage<V> stage = (CompletionStage<V>) future;
+                stage.whenComplete(new BiConsumer<V, Throwable>() {
+                    @Override
+                    public void accept(V value, Throwable cause) {
+                        if (cause == null) {
+                            invokeCallback(callback, ExecutionCallback.Result.Success, value, null);
+                        } else {
+                            if (cause instanceof CompletionException && cause.getCause() != null) {
+                                cause = cause.getCause();
+                            }
+                            ExecutionCallback.Result result = cause instanceof CancellationException ? ExecutionCallback.Result.Cancelled : ExecutionCallback.Result.Failure;
+                            invokeCallback(callback, result, null, cause);
+                        }
+                    }
+                });
                 return;
             }
         }
 
         if (isNetty) {
             if (future instanceof io.netty.util.concurrent.Future) {
-                final Entry entry = new Entry<>(future, callback, false);
-                registerEntry(entry);
-                ((io.netty.util.concurrent.Future) future).addListener(new FutureListener() {
+                ((io.netty.util.concurrent.Future<V>) future).addListener(new FutureListener<V>() {
                     @Override
-                    public void operationComplete(final io.netty.util.concurrent.Future future) throws Exception {
-                        createCompletionHandler(entry, future, callback);
+                    public void operationComplete(io.netty.util.concurrent.Future<V> future) throws Exception {
+                        if (future.isSuccess()) {
+                            invokeCallback(callback, ExecutionCallback.Result.Success, future.getNow(), null);
+                        } else if (future.isCancelled()) {
+                            invokeCallback(callback, ExecutionCallback.Result.Cancelled, null, future.cause());
+                        } else {
+                            invokeCallback(callback, ExecutionCallback.Result.Failure, null, future.cause());
+                        }
                     }
                 });
                 return;
             }
         }
 
-        if (!tryHandle(WAIT_INITIAL_TIME_MILLIS, future, callback)) {
-            synchronized (ENTRIES) {
-                ENTRIES.add(new Entry<>(future, callback, true));
-                ENTRIES.notifyAll();
-            }
+        if (future.isDone()) {
+            handleDone(future, callback, false);
+            return;
         }
-    }
 
-    private static void registerEntry(Entry entry) {
-        synchronized (ENTRIES) {
-            ENTRIES.add(entry);
+        final Entry entry = new Entry<>(future, callback);
+        if (!registerEntry(entry)) {
+            return;
         }
+        POLLERS[(pollerSelector.getAndIncrement() & Integer.MAX_VALUE) % POLLERS.length].add(entry);
     }
 
-    private static <V> Runnable createCompletionHandler(final Entry entry, final Future<V> future, final ExecutionCallback<V> callback) {
-        return new Runnable() {
-            @Override
-            public void run() {
-                synchronized (ENTRIES) {
-                    if (!ENTRIES.contains(entry)) {
-                        return;
-                    }
-                    ENTRIES.remove(entry);
-                }
-                tryHandle(WAIT_INITIAL_TIME_MILLIS, future, callback);
+    // the same callback listening to the same future again joins the pending registration,
+    // so it is called back once and a single unlisten() removes it; false when joined
+    private static boolean registerEntry(Entry entry) {
+        while (true) {
+            Entry existing = ENTRIES.putIfAbsent(entry, entry);
+            if (existing == null) {
+                return true;
+            }
+            if (!existing.isClaimed()) {
+                return false;
             }
-        };
+            // previous registration is being called back, it is replaced
+            if (ENTRIES.replace(entry, existing, entry)) {
+                return true;
+            }
+        }
+    }
+
+    private static void deregisterEntry(Entry entry) {
+        if (ENTRIES.get(entry) == entry) {
+            ENTRIES.remove(entry, entry);
+        }
     }
 
     public static <V> void unlisten(Future<V> future, ExecutionCallback<V> callback) {
-        synchronized (ENTRIES) {
-            Entry found = null;
-            for (Entry entry : ENTRIES) {
-                if (entry.future == future && entry.callback == callback) {
-                    found = entry;
-                    break;
-                }
-            }
+        Entry found = ENTRIES.remove(new Entry<>(future, callback));
+        if (found != null) {
+            found.claim();
+        }
+    }
 
-            if (found != null) {
-                ENTRIES.remove(found);
-            }
+    public static Executor getListenableFutureExecutor() {
+        return listenableFutureExecutor;
+    }
+
+    // executor running completion listeners of Guava's ListenableFuture, direct by default
+    public static void setListenableFutureExecutor(Executor executor) {
+        if (executor == null) {
+            throw new NullPointerException("executor");
         }
+        listenableFutureExecutor = executor;
     }
 
-    private static <V> boolean tryHandle(int waitTimeMillis, Future<V> future, ExecutionCallback<V> callback) {
+    // future has to be done already, so get() does not block
+    private static <V> void handleDone(Future<V> future, ExecutionCallback<V> callback, boolean dispatch) {
+        ExecutionCallback.Result result;
+        V value = null;
+        Throwable cause = null;
         try {
-            V value = future.get(waitTimeMillis, TimeUnit.MILLISECONDS);
-            callCallback(callback, ExecutionCallback.Result.Success, value, null);
-            return true;
+            value = future.get();
+            result = ExecutionCallback.Result.Success;
         } catch (CancellationException cancelled) {
-            callCallback(callback, ExecutionCallback.Result.Cancelled, null, cancelled);
-            return true;
-        } catch (ExecutionException cause) {
-            callCallback(callback, ExecutionCallback.Result.Failure, null, cause);
-            return true;
-        } catch (InterruptedException | TimeoutException ignore) {
+            result = ExecutionCallback.Result.Cancelled;
+            cause = cancelled;
+        } catch (ExecutionException e) {
+            result = ExecutionCallback.Result.Failure;
+            cause = e.getCause() != null ? e.getCause() : e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            result = ExecutionCallback.Result.Failure;
+            cause = e;
         }
 
-        return false;
+        if (dispatch) {
+            callCallback(callback, result, value, cause);
+        } else {
+            invokeCallback(callback, result, value, cause);
+        }
+    }
+
+    private static <V> void invokeCallback(ExecutionCallback<V> callback, ExecutionCallback.Result result, V value, Throwable cause) {
+        try {
+            callback.callback(result, value, cause);
+        } catch (Throwable e) {
+            OptionalLogger.error(log, "Future callback {} error", callback, e);
+        }
     }
 
     private static <V> void callCallback(final ExecutionCallback<V> callback, final ExecutionCallback.Result result, final V value, final Throwable cause) {
         CALLBACK_EXECUTOR.execute(new Runnable() {
             @Override
             public void run() {
-                callback.callback(result, value, cause);
+                invokeCallback(callback, result, value, cause);
             }
         });
     }
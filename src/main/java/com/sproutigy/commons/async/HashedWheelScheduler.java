@@ -0,0 +1,444 @@
+package com.sproutigy.commons.async;
+
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+
+public final class HashedWheelScheduler {
+
+    private static Object log = OptionalLogger.getLogger(HashedWheelScheduler.class);
+
+    private static final AtomicInteger instanceCounter = new AtomicInteger();
+
+    public static final long DEFAULT_TICK_MILLIS = 10;
+    public static final int DEFAULT_TICKS_PER_WHEEL = 512;
+    public static final int DEFAULT_DISPATCH_BATCH_SIZE = 64;
+
+    private final long tickNanos;
+    private final Bucket[] wheel;
+    private final int mask;
+    private final Executor executor;
+    private final int dispatchBatchSize;
+
+    private final Queue<WheelTimeout> scheduled = new ConcurrentLinkedQueue<>();
+    private final Queue<WheelTimeout> cancelled = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pending = new AtomicInteger();
+
+    private final Thread worker;
+    private final long startTime;
+    private volatile boolean idle;
+    private volatile boolean shutdown;
+
+    public HashedWheelScheduler(Executor executor) {
+        this(DEFAULT_TICK_MILLIS, TimeUnit.MILLISECONDS, DEFAULT_TICKS_PER_WHEEL, executor);
+    }
+
+    public HashedWheelScheduler(long tickDuration, TimeUnit unit, int ticksPerWheel, Executor executor) {
+        this(tickDuration, unit, ticksPerWheel, executor, DEFAULT_DISPATCH_BATCH_SIZE);
+    }
+
+    // executor receives expired tasks in batches of up to dispatchBatchSize, null runs them on the timer thread
+    public HashedWheelScheduler(long tickDuration, TimeUnit unit, int ticksPerWheel, Executor executor, int dispatchBatchSize) {
+        if (tickDuration <= 0) {
+            throw new IllegalArgumentException("tickDuration must be greater than 0");
+        }
+        if (ticksPerWheel <= 0 || ticksPerWheel > (1 << 30)) {
+            throw new IllegalArgumentException("ticksPerWheel must be between 1 and 2^30");
+        }
+        if (dispatchBatchSize <= 0) {
+            throw new IllegalArgumentException("dispatchBatchSize must be greater than 0");
+        }
+
+        this.tickNanos = unit.toNanos(tickDuration);
+        this.executor = executor;
+        this.dispatchBatchSize = dispatchBatchSize;
+
+        int size = Integer.highestOneBit(ticksPerWheel);
+        if (size < ticksPerWheel) {
+            size <<= 1;
+        }
+        this.wheel = new Bucket[size];
+        for (int i = 0; i < size; i++) {
+            wheel[i] = new Bucket();
+        }
+        this.mask = size - 1;
+
+        this.startTime = System.nanoTime();
+        this.worker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                work();
+            }
+        });
+        worker.setName(HashedWheelScheduler.class.getSimpleName() + "-" + instanceCounter.incrementAndGet());
+        worker.setDaemon(true);
+        worker.setPriority(Thread.MAX_PRIORITY);
+        worker.start();
+    }
+
+    public long getTickDuration(TimeUnit unit) {
+        return unit.convert(tickNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public int getTicksPerWheel() {
+        return wheel.length;
+    }
+
+    public int getPendingCount() {
+        return pending.get();
+    }
+
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    public void shutdown() {
+        shutdown = true;
+        LockSupport.unpark(worker);
+    }
+
+    public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+        return add(new WheelTimeout(this, command, deadline(delay, unit), 0));
+    }
+
+    public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit) {
+        if (period <= 0) {
+            throw new IllegalArgumentException("period must be greater than 0");
+        }
+        return add(new WheelTimeout(this, command, deadline(initialDelay, unit), unit.toNanos(period)));
+    }
+
+    private long deadline(long delay, TimeUnit unit) {
+        return System.nanoTime() - startTime + Math.max(0, unit.toNanos(delay));
+    }
+
+    private WheelTimeout add(WheelTimeout timeout) {
+        if (timeout.command == null) {
+            throw new NullPointerException("command");
+        }
+        if (shutdown) {
+            throw new RejectedExecutionException("Scheduler has been shut down");
+        }
+
+        pending.incrementAndGet();
+        scheduled.add(timeout);
+        if (idle) {
+            LockSupport.unpark(worker);
+        }
+        return timeout;
+    }
+
+    private void work() {
+        long tick = 0;
+        List<Runnable> expired = new ArrayList<>();
+
+        while (!shutdown) {
+            long deadline = (tick + 1) * tickNanos;
+            long sleepNanos = deadline - (System.nanoTime() - startTime);
+            if (sleepNanos > 0) {
+                if (pending.get() == 0) {
+                    idle = true;
+                    if (pending.get() == 0 && !shutdown) {
+                        LockSupport.park(this);
+                    }
+                    idle = false;
+                    // nothing was waiting for ticks that passed in the meantime
+                    long now = System.nanoTime() - startTime;
+                    if (pending.get() > 0 || shutdown) {
+                        tick = Math.max(tick, now / tickNanos);
+                    }
+                    continue;
+                }
+                LockSupport.parkNanos(this, sleepNanos);
+                continue;
+            }
+
+            removeCancelled();
+            transferScheduled(tick);
+
+            long now = System.nanoTime() - startTime;
+            pending.addAndGet(-wheel[(int) (tick & mask)].expire(now, expired));
+            reschedulePeriodic(expired, tick);
+            dispatch(expired);
+            expired.clear();
+
+            tick++;
+        }
+
+        OptionalLogger.debug(log, "Hashed wheel scheduler stopped with {} pending timeouts", pending.get());
+    }
+
+    private void removeCancelled() {
+        WheelTimeout timeout;
+        while ((timeout = cancelled.poll()) != null) {
+            if (timeout.bucket != null) {
+                timeout.bucket.remove(timeout);
+                pending.decrementAndGet();
+            }
+        }
+    }
+
+    private void transferScheduled(long currentTick) {
+        // limit the transfer per tick, so a burst of schedules does not stall expiration
+        for (int i = 0; i < 100000; i++) {
+            WheelTimeout timeout = scheduled.poll();
+            if (timeout == null) {
+                return;
+            }
+            if (timeout.isCancelled()) {
+                pending.decrementAndGet();
+                continue;
+            }
+            place(timeout, currentTick);
+        }
+    }
+
+    private void place(WheelTimeout timeout, long currentTick) {
+        long calculated = timeout.deadline / tickNanos;
+        timeout.remainingRounds = (calculated - currentTick) / wheel.length;
+        long ticks = Math.max(calculated, currentTick);
+        wheel[(int) (ticks & mask)].add(timeout);
+    }
+
+    private void reschedulePeriodic(List<Runnable> expired, long currentTick) {
+        for (int i = 0; i < expired.size(); i++) {
+            WheelTimeout timeout = (WheelTimeout) expired.get(i);
+            if (timeout.period > 0 && !timeout.isCancelled()) {
+                timeout.deadline += timeout.period;
+                pending.incrementAndGet();
+                place(timeout, currentTick + 1);
+            }
+        }
+    }
+
+    private void dispatch(List<Runnable> expired) {
+        int size = expired.size();
+        if (size == 0) {
+            return;
+        }
+
+        if (executor == null) {
+            for (int i = 0; i < size; i++) {
+                expired.get(i).run();
+            }
+            return;
+        }
+
+        for (int from = 0; from < size; from += dispatchBatchSize) {
+            final Runnable[] batch = expired.subList(from, Math.min(size, from + dispatchBatchSize)).toArray(new Runnable[0]);
+            try {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        for (Runnable runnable : batch) {
+                            runnable.run();
+                        }
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                OptionalLogger.error(log, "Could not dispatch {} expired timeouts", batch.length, e);
+            }
+        }
+    }
+
+
+    private static final class Bucket {
+        WheelTimeout head;
+        WheelTimeout tail;
+
+        void add(WheelTimeout timeout) {
+            timeout.bucket = this;
+            if (head == null) {
+                head = tail = timeout;
+            } else {
+                tail.next = timeout;
+                timeout.prev = tail;
+                tail = timeout;
+            }
+        }
+
+        void remove(WheelTimeout timeout) {
+            WheelTimeout next = timeout.next;
+            if (timeout.prev != null) {
+                timeout.prev.next = next;
+            }
+            if (timeout.next != null) {
+                timeout.next.prev = timeout.prev;
+            }
+
+            if (timeout == head) {
+                if (timeout == tail) {
+                    tail = null;
+                    head = null;
+                } else {
+                    head = next;
+                }
+            } else if (timeout == tail) {
+                tail = timeout.prev;
+            }
+
+            timeout.prev = null;
+            timeout.next = null;
+            timeout.bucket = null;
+        }
+
+        // returns number of timeouts removed from the bucket
+        int expire(long now, List<Runnable> expired) {
+            int removed = 0;
+            WheelTimeout timeout = head;
+            while (timeout != null) {
+                WheelTimeout next = timeout.next;
+                if (timeout.remainingRounds <= 0 && timeout.deadline <= now) {
+                    remove(timeout);
+                    removed++;
+                    if (timeout.period > 0 ? !timeout.isCancelled() : timeout.expire()) {
+                        expired.add(timeout);
+                    }
+                } else if (timeout.remainingRounds > 0) {
+                    timeout.remainingRounds--;
+                }
+                timeout = next;
+            }
+            return removed;
+        }
+    }
+
+    private static final class WheelTimeout implements ScheduledFuture<Object>, Runnable {
+        private static final AtomicIntegerFieldUpdater<WheelTimeout> STATE =
+                AtomicIntegerFieldUpdater.newUpdater(WheelTimeout.class, "state");
+
+        private static final int SCHEDULED = 0;
+        private static final int EXPIRED = 1;
+        private static final int CANCELLED = 2;
+        private static final int FINISHED = 3;
+
+        final HashedWheelScheduler scheduler;
+        final Runnable command;
+        final long period;
+        long deadline;
+        long remainingRounds;
+
+        Bucket bucket;
+        WheelTimeout prev;
+        WheelTimeout next;
+
+        private volatile int state = SCHEDULED;
+        private volatile boolean waiting;
+
+        WheelTimeout(HashedWheelScheduler scheduler, Runnable command, long deadline, long period) {
+            this.scheduler = scheduler;
+            this.command = command;
+            this.deadline = deadline;
+            this.period = period;
+        }
+
+        boolean expire() {
+            return STATE.compareAndSet(this, SCHEDULED, EXPIRED);
+        }
+
+        @Override
+        public void run() {
+            if (period > 0) {
+                if (state != SCHEDULED) {
+                    return;
+                }
+                try {
+                    command.run();
+                } catch (Throwable e) {
+                    OptionalLogger.error(log, "Scheduled periodic task {} failed", command, e);
+                }
+                return;
+            }
+
+            try {
+                command.run();
+            } catch (Throwable e) {
+                OptionalLogger.error(log, "Scheduled task {} failed", command, e);
+            } finally {
+                state = FINISHED;
+                if (waiting) {
+                    synchronized (this) {
+                        notifyAll();
+                    }
+                }
+            }
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            if (!STATE.compareAndSet(this, SCHEDULED, CANCELLED)) {
+                return false;
+            }
+            scheduler.cancelled.add(this);
+            if (waiting) {
+                synchronized (this) {
+                    notifyAll();
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return state == CANCELLED;
+        }
+
+        @Override
+        public boolean isDone() {
+            int current = state;
+            return current == CANCELLED || current == FINISHED;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(deadline - (System.nanoTime() - scheduler.startTime), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            if (other == this) {
+                return 0;
+            }
+            long diff = getDelay(TimeUnit.NANOSECONDS) - other.getDelay(TimeUnit.NANOSECONDS);
+            return diff < 0 ? -1 : (diff > 0 ? 1 : 0);
+        }
+
+        @Override
+        public Object get() throws InterruptedException, ExecutionException {
+            synchronized (this) {
+                waiting = true;
+                while (!isDone()) {
+                    wait();
+                }
+            }
+            if (isCancelled()) {
+                throw new CancellationException();
+            }
+            return null;
+        }
+
+        @Override
+        public Object get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+            final long deadline = System.nanoTime() + unit.toNanos(timeout);
+            synchronized (this) {
+                waiting = true;
+                while (!isDone()) {
+                    long left = deadline - System.nanoTime();
+                    if (left <= 0) {
+                        throw new TimeoutException();
+                    }
+                    TimeUnit.NANOSECONDS.timedWait(this, left);
+                }
+            }
+            if (isCancelled()) {
+                throw new CancellationException();
+            }
+            return null;
+        }
+    }
+}
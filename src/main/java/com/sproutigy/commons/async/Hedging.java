@@ -0,0 +1,299 @@
+package com.sproutigy.commons.async;
+
+
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Hedged requests: when an attempt does not succeed within the hedge delay, a backup attempt is started
+// and the first success wins, the other attempt is cancelled. Hedge delay is either fixed or derived
+// from a rolling percentile of successful attempts latency, hedge rate is limited by a token budget.
+public class Hedging {
+
+    private static Object log = OptionalLogger.getLogger(Hedging.class);
+
+    public static final long DEFAULT_DELAY_MILLIS = 50;
+    public static final double DEFAULT_MAX_HEDGE_RATE = 0.1;
+    public static final int DEFAULT_WINDOW_SIZE = 1000;
+
+    // hedge budget is kept in thousandths of a hedge, so fractional rates accumulate exactly
+    private static final long TOKEN = 1000;
+    private static final long MAX_TOKENS = 10 * TOKEN;
+    private static final int MIN_SAMPLES = 20;
+
+    // set by any thread, read by hedging ones
+    private volatile long delayNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_DELAY_MILLIS);
+    private volatile double percentile = 0;
+    private volatile double maxHedgeRate = DEFAULT_MAX_HEDGE_RATE;
+
+    private volatile long[] samples = new long[DEFAULT_WINDOW_SIZE];
+    private final AtomicLong sampled = new AtomicLong();
+    private volatile long percentileDelayNanos;
+
+    // starts empty, so even a cold start never hedges more than maxHedgeRate of the calls
+    private final AtomicLong tokens = new AtomicLong();
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong hedges = new AtomicLong();
+
+
+    public Hedging() {
+    }
+
+    public Hedging(long delay, TimeUnit unit) {
+        setDelay(delay, unit);
+    }
+
+    // fixed hedge delay, also used until enough latency samples are collected when percentile is set
+    public Hedging setDelay(long delay, TimeUnit unit) {
+        if (delay < 0) {
+            throw new IllegalArgumentException("delay < 0");
+        }
+        this.delayNanos = unit.toNanos(delay);
+        return this;
+    }
+
+    // i.e. 0.95 hedges attempts slower than 95% of recent successful ones, 0 disables
+    public Hedging setPercentile(double percentile) {
+        if (percentile < 0 || percentile >= 1) {
+            throw new IllegalArgumentException("percentile has to be in [0, 1) range");
+        }
+        this.percentile = percentile;
+        return this;
+    }
+
+    public Hedging setWindowSize(int windowSize) {
+        if (windowSize < MIN_SAMPLES) {
+            throw new IllegalArgumentException("windowSize has to be at least " + MIN_SAMPLES);
+        }
+        this.samples = new long[windowSize];
+        this.sampled.set(0);
+        return this;
+    }
+
+    // fraction of calls allowed to be hedged, 1.0 at most so hedging never more than doubles the load
+    public Hedging setMaxHedgeRate(double maxHedgeRate) {
+        if (maxHedgeRate < 0 || maxHedgeRate > 1) {
+            throw new IllegalArgumentException("maxHedgeRate has to be in [0, 1] range");
+        }
+        this.maxHedgeRate = maxHedgeRate;
+        return this;
+    }
+
+    public long getDelay(TimeUnit unit) {
+        return unit.convert(currentDelayNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    public long getCalls() {
+        return calls.get();
+    }
+
+    public long getHedges() {
+        return hedges.get();
+    }
+
+    public double getHedgeRate() {
+        long callsCount = calls.get();
+        return callsCount == 0 ? 0 : hedges.get() / (double) callsCount;
+    }
+
+    public <V> Promise<V> execute(final Callable<V> task) {
+        return submit(new Callable<Future<V>>() {
+            @Override
+            public Future<V> call() throws Exception {
+                return Promise.execute(task);
+            }
+        });
+    }
+
+    // attempt is called once or twice, each call has to start an independent request
+    public <V> Promise<V> submit(Callable<? extends Future<V>> attempt) {
+        calls.incrementAndGet();
+        deposit();
+
+        Call<V> call = new Call<>(attempt);
+        call.start();
+        return call.deferred.getPromise();
+    }
+
+    private long currentDelayNanos() {
+        if (percentile > 0 && sampled.get() >= MIN_SAMPLES) {
+            return percentileDelayNanos;
+        }
+        return delayNanos;
+    }
+
+    private void deposit() {
+        long added = (long) (maxHedgeRate * TOKEN);
+        while (true) {
+            long current = tokens.get();
+            long next = Math.min(current + added, MAX_TOKENS);
+            if (current == next || tokens.compareAndSet(current, next)) {
+                return;
+            }
+        }
+    }
+
+    private boolean tryAcquireHedge() {
+        while (true) {
+            long current = tokens.get();
+            if (current < TOKEN) {
+                return false;
+            }
+            if (tokens.compareAndSet(current, current - TOKEN)) {
+                hedges.incrementAndGet();
+                return true;
+            }
+        }
+    }
+
+    // samples are overwritten racily, which is fine for a latency estimate
+    private void record(long latencyNanos) {
+        long[] window = samples;
+        long index = sampled.getAndIncrement();
+        window[(int) (index % window.length)] = latencyNanos;
+
+        long count = index + 1;
+        long refreshEvery = Math.max(1, window.length / 8);
+        if (percentile > 0 && count >= MIN_SAMPLES && (count == MIN_SAMPLES || count % refreshEvery == 0)) {
+            long[] sorted = Arrays.copyOf(window, (int) Math.min(count, window.length));
+            Arrays.sort(sorted);
+            int position = (int) Math.ceil(percentile * sorted.length) - 1;
+            percentileDelayNanos = sorted[Math.max(0, position)];
+        }
+    }
+
+
+    private final class Call<V> {
+        final Deferred<V> deferred = Promise.defer();
+        final Callable<? extends Future<V>> attempt;
+        final AtomicBoolean decided = new AtomicBoolean();
+        // running attempts plus the pending hedge timer
+        final AtomicInteger outstanding = new AtomicInteger(2);
+        volatile Promise<V> primary;
+        volatile Promise<V> backup;
+        volatile ScheduledFuture<?> timer;
+
+        Call(Callable<? extends Future<V>> attempt) {
+            this.attempt = attempt;
+        }
+
+        void start() {
+            deferred.getPromise().addCanceller(new Callback<Boolean>() {
+                @Override
+                public void onCallback(Boolean mayInterruptIfRunning) throws Exception {
+                    cancelAttempts(mayInterruptIfRunning);
+                }
+            });
+
+            primary = launch();
+            if (primary.isDone()) {
+                // settled synchronously, nothing to hedge
+                finishOne(null);
+                return;
+            }
+
+            ScheduledFuture<?> scheduled = Async.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    hedge();
+                }
+            }, currentDelayNanos(), TimeUnit.NANOSECONDS);
+            timer = scheduled;
+
+            // primary could have failed before the timer was visible to its rejection callback
+            if (primary.getState() == Promise.State.Rejected && scheduled.cancel(false)) {
+                finishOne(null);
+            }
+        }
+
+        private void hedge() {
+            if (decided.get() || !tryAcquireHedge()) {
+                if (!decided.get()) {
+                    OptionalLogger.debug(log, "Hedge budget exhausted, not hedging {}", attempt);
+                }
+                finishOne(null);
+                return;
+            }
+            backup = launch();
+            if (decided.get()) {
+                // primary won meanwhile
+                cancel(backup, true);
+            }
+        }
+
+        private Promise<V> launch() {
+            final long started = System.nanoTime();
+            Promise<V> promise;
+            try {
+                promise = Promise.from(attempt.call());
+            } catch (Throwable e) {
+                promise = Promise.reject(e);
+            }
+
+            final Promise<V> launched = promise;
+            launched.onDone(new Callback<V>() {
+                @Override
+                public void onCallback(V value) throws Exception {
+                    if (decided.compareAndSet(false, true)) {
+                        record(System.nanoTime() - started);
+                        deferred.resolve(value);
+                        ScheduledFuture<?> pending = timer;
+                        if (pending != null) {
+                            pending.cancel(false);
+                        }
+                        cancelOther(launched);
+                    }
+                }
+            }, new Callback<Throwable>() {
+                @Override
+                public void onCallback(Throwable cause) throws Exception {
+                    if (launched == primary || primary == null) {
+                        // primary failure is not a reason to hedge
+                        ScheduledFuture<?> pending = timer;
+                        if (pending != null && pending.cancel(false)) {
+                            outstanding.decrementAndGet();
+                        }
+                    }
+                    finishOne(cause);
+                }
+            });
+            return launched;
+        }
+
+        private void finishOne(Throwable cause) {
+            if (outstanding.decrementAndGet() == 0 && decided.compareAndSet(false, true)) {
+                deferred.reject(cause != null ? cause : lastCause());
+            }
+        }
+
+        private Throwable lastCause() {
+            Promise<V> current = backup != null ? backup : primary;
+            return current != null && current.getState() == Promise.State.Rejected ? current.getCause() : new IllegalStateException("Hedged attempts failed");
+        }
+
+        private void cancelOther(Promise<V> winner) {
+            cancel(winner == primary ? backup : primary, true);
+        }
+
+        private void cancelAttempts(boolean mayInterruptIfRunning) {
+            decided.set(true);
+            ScheduledFuture<?> pending = timer;
+            if (pending != null) {
+                pending.cancel(false);
+            }
+            cancel(primary, mayInterruptIfRunning);
+            cancel(backup, mayInterruptIfRunning);
+        }
+
+        private void cancel(Promise<V> promise, boolean mayInterruptIfRunning) {
+            if (promise != null && !promise.isDone()) {
+                promise.cancel(mayInterruptIfRunning);
+            }
+        }
+    }
+}
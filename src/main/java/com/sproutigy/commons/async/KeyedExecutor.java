@@ -0,0 +1,178 @@
+package com.sproutigy.commons.async;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+// Runs tasks of the same key one at a time in submission order, tasks of different keys in parallel.
+// By default every active key gets its own serial queue, removed as soon as the key has no pending tasks.
+// Striped mode hashes keys onto a fixed number of serial queues instead, which bounds memory
+// at the cost of unrelated keys sharing a stripe also being serialized.
+public class KeyedExecutor {
+
+    private final Executor executor;
+    private final int batchLimit;
+
+    // per key mode
+    private final ConcurrentHashMap<Object, KeyQueue> queues;
+
+    // striped mode
+    private final SerialExecutor[] stripes;
+
+
+    private static final class KeyQueue extends SerialExecutor {
+        private static final AtomicIntegerFieldUpdater<KeyQueue> USERS =
+                AtomicIntegerFieldUpdater.newUpdater(KeyQueue.class, "users");
+
+        final ConcurrentHashMap<Object, KeyQueue> queues;
+        final Object key;
+        // tasks submitted and not finished yet, -1 once the queue is retired and must not be used anymore
+        volatile int users;
+
+        KeyQueue(Executor executor, int batchLimit, ConcurrentHashMap<Object, KeyQueue> queues, Object key) {
+            super(executor, batchLimit);
+            this.queues = queues;
+            this.key = key;
+        }
+
+        boolean acquire() {
+            while (true) {
+                int current = users;
+                if (current < 0) {
+                    return false;
+                }
+                if (USERS.compareAndSet(this, current, current + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        void release() {
+            if (USERS.decrementAndGet(this) == 0 && USERS.compareAndSet(this, 0, -1)) {
+                queues.remove(key, this);
+            }
+        }
+
+        @Override
+        protected void afterExecute(Runnable task) {
+            release();
+        }
+    }
+
+    public KeyedExecutor() {
+        this(Async.EXECUTOR);
+    }
+
+    public KeyedExecutor(Executor executor) {
+        this(executor, 0);
+    }
+
+    // stripes rounded up to a power of two, 0 for a queue per key
+    public KeyedExecutor(Executor executor, int stripes) {
+        this(executor, stripes, SerialExecutor.DEFAULT_BATCH_LIMIT);
+    }
+
+    public KeyedExecutor(Executor executor, int stripes, int batchLimit) {
+        if (executor == null) {
+            throw new NullPointerException("executor");
+        }
+        if (stripes < 0) {
+            throw new IllegalArgumentException("stripes < 0");
+        }
+        if (batchLimit < 1) {
+            throw new IllegalArgumentException("batchLimit < 1");
+        }
+        this.executor = executor;
+        this.batchLimit = batchLimit;
+
+        if (stripes == 0) {
+            this.queues = new ConcurrentHashMap<>();
+            this.stripes = null;
+        } else {
+            int size = Integer.highestOneBit(stripes);
+            if (size < stripes) {
+                size <<= 1;
+            }
+            this.queues = null;
+            this.stripes = new SerialExecutor[size];
+            for (int i = 0; i < size; i++) {
+                this.stripes[i] = new SerialExecutor(executor, batchLimit);
+            }
+        }
+    }
+
+    public boolean isStriped() {
+        return stripes != null;
+    }
+
+    // keys with pending tasks, or the number of stripes in striped mode
+    public int getKeyCount() {
+        return stripes != null ? stripes.length : queues.size();
+    }
+
+    // tasks waiting for the given key, in striped mode also for the keys sharing its stripe
+    public int getQueueSize(Object key) {
+        if (stripes != null) {
+            return stripe(key).getQueueSize();
+        }
+        KeyQueue queue = queues.get(key);
+        return queue != null ? queue.getQueueSize() : 0;
+    }
+
+    public void execute(Object key, Runnable command) {
+        if (key == null) {
+            throw new NullPointerException("key");
+        }
+        if (command == null) {
+            throw new NullPointerException("command");
+        }
+
+        if (stripes != null) {
+            stripe(key).execute(command);
+            return;
+        }
+
+        while (true) {
+            KeyQueue queue = queues.get(key);
+            if (queue == null) {
+                KeyQueue created = new KeyQueue(executor, batchLimit, queues, key);
+                queue = queues.putIfAbsent(key, created);
+                if (queue == null) {
+                    queue = created;
+                }
+            }
+            if (!queue.acquire()) {
+                // retired by its last task, it is about to be removed
+                queues.remove(key, queue);
+                continue;
+            }
+            // task is queued even when scheduling fails, so it releases the queue itself
+            queue.execute(command);
+            return;
+        }
+    }
+
+    public <V> Promise<V> submit(Object key, Callable<V> callable) {
+        PromiseTask<V> task = new PromiseTask<>(callable);
+        execute(key, task);
+        return task;
+    }
+
+    public <V> Promise<V> submit(Object key, Runnable runnable, V value) {
+        PromiseTask<V> task = new PromiseTask<>(runnable, value);
+        execute(key, task);
+        return task;
+    }
+
+    public Promise<?> submit(Object key, Runnable runnable) {
+        return submit(key, runnable, (Object) null);
+    }
+
+    private SerialExecutor stripe(Object key) {
+        int hash = key.hashCode();
+        // spread higher bits, as ConcurrentHashMap does
+        hash ^= hash >>> 16;
+        return stripes[hash & (stripes.length - 1)];
+    }
+}
@@ -3,12 +3,14 @@ package com.sproutigy.commons.async;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+// Loggers are passed around as Object, so classes holding them do not refer to slf4j types in their fields.
+// Field signatures are resolved by reflection (i.e. by atomic field updaters), which would fail without slf4j.
 final class OptionalLogger {
     private OptionalLogger() {
     }
 
 
-    public static <T> Logger getLogger(Class<T> clazz) {
+    public static <T> Object getLogger(Class<T> clazz) {
         try {
             Class.forName("org.slf4j.Logger");
             return LoggerFactory.getLogger(clazz);
@@ -18,41 +20,41 @@ final class OptionalLogger {
     }
 
 
-    public static void trace(Logger logger, String message, Object... objects) {
+    public static void trace(Object logger, String message, Object... objects) {
         if (logger != null) {
-            logger.trace(message, objects);
+            ((Logger) logger).trace(message, objects);
         } else {
             System.err.println("[TRACE] " + resolveString(message, objects));
         }
     }
 
-    public static void debug(Logger logger, String message, Object... objects) {
+    public static void debug(Object logger, String message, Object... objects) {
         if (logger != null) {
-            logger.debug(message, objects);
+            ((Logger) logger).debug(message, objects);
         } else {
             System.err.println("[DEBUG] " + resolveString(message, objects));
         }
     }
 
-    public static void info(Logger logger, String message, Object... objects) {
+    public static void info(Object logger, String message, Object... objects) {
         if (logger != null) {
-            logger.info(message, objects);
+            ((Logger) logger).info(message, objects);
         } else {
             System.err.println("[INFO] " + resolveString(message, objects));
         }
     }
 
-    public static void warn(Logger logger, String message, Object... objects) {
+    public static void warn(Object logger, String message, Object... objects) {
         if (logger != null) {
-            logger.warn(message, objects);
+            ((Logger) logger).warn(message, objects);
         } else {
             System.err.println("[WARN] " + resolveString(message, objects));
         }
     }
 
-    public static void error(Logger logger, String message, Object... objects) {
+    public static void error(Object logger, String message, Object... objects) {
         if (logger != null) {
-            logger.error(resolveString(message, objects));
+            ((Logger) logger).error(resolveString(message, objects));
         } else {
             System.err.println("[ERROR] " + resolveString(message, objects));
 
@@ -1,49 +1,238 @@
 package com.sproutigy.commons.async;
 
-import org.slf4j.Logger;
 
-import java.util.LinkedList;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BiConsumer;
 
-public final class Promise<V> implements Future<V> {
+// Not final only so that PromiseTask can extend it: the constructor for subclasses and the settling methods
+// are package-private, and the public constructor rejects subclasses.
+public class Promise<V> implements Future<V> {
     private static AtomicLong counter = new AtomicLong();
 
-    private static Logger log = OptionalLogger.getLogger(Promise.class);
+    private static Object log = OptionalLogger.getLogger(Promise.class);
     private static final String PACKAGE_NAME = Promise.class.getPackage().getName();
 
     public enum State {
         Pending, Fulfilled, Rejected
     }
 
-    private long num;
-    private String name;
-    private State state = State.Pending;
-    private Object result;
+    public static final String SYNCHRONOUS_PROPERTY = "com.sproutigy.commons.async.Promise.synchronous";
+    public static final String SYNCHRONOUS_MAX_DEPTH_PROPERTY = "com.sproutigy.commons.async.Promise.synchronousMaxDepth";
 
-    private List<Handler> handlers = new LinkedList<>();
-    private Executor executor = new QueuedExecution(Async.getService());
+    private static volatile boolean defaultSynchronous = Boolean.getBoolean(SYNCHRONOUS_PROPERTY);
+    private static volatile int synchronousMaxDepth = Integer.getInteger(SYNCHRONOUS_MAX_DEPTH_PROPERTY, 32);
+
+    public static final String AWAIT_SPINS_PROPERTY = "com.sproutigy.commons.async.Promise.awaitSpins";
+
+    // spinning is useless on a single core, settling thread needs the core to make progress
+    private static volatile int maxAwaitSpins = Integer.getInteger(AWAIT_SPINS_PROPERTY, SpinWait.MULTIPROCESSOR ? 1024 : 0);
+    private static final int MIN_AWAIT_SPINS = 16;
+    private static volatile int awaitSpins = Math.min(MIN_AWAIT_SPINS, maxAwaitSpins);
+
+    // remaining time too short for parking to be precise
+    private static final long SPIN_FOR_TIMEOUT_THRESHOLD = 1000L;
+    // about 146 years, leaves room for the elapsed time and the low bit set on deadlines
+    private static final long MAX_TIMEOUT_NANOS = Long.MAX_VALUE >> 1;
+
+    private static final ThreadLocal<SerialExecutor> SHARED_EXECUTOR = new ThreadLocal<SerialExecutor>() {
+        @Override
+        protected SerialExecutor initialValue() {
+            return new SerialExecutor(Async.EXECUTOR);
+        }
+    };
+
+    private static final ThreadLocal<Trampoline> TRAMPOLINE = new ThreadLocal<Trampoline>() {
+        @Override
+        protected Trampoline initialValue() {
+            return new Trampoline();
+        }
+    };
+
+    private static final AtomicReferenceFieldUpdater<Promise, Object> STATE =
+            AtomicReferenceFieldUpdater.newUpdater(Promise.class, Object.class, "state");
+    private static final AtomicReferenceFieldUpdater<Promise, Object> CANCELLERS =
+            AtomicReferenceFieldUpdater.newUpdater(Promise.class, Object.class, "cancellers");
+    private static final AtomicIntegerFieldUpdater<Promise> DEPENDENTS =
+            AtomicIntegerFieldUpdater.newUpdater(Promise.class, "dependents");
+    private static final AtomicReferenceFieldUpdater<Promise, Waiter> WAITERS =
+            AtomicReferenceFieldUpdater.newUpdater(Promise.class, Waiter.class, "waiters");
+    private static final AtomicReferenceFieldUpdater<Promise, Runnable> LAZY_START =
+            AtomicReferenceFieldUpdater.newUpdater(Promise.class, Runnable.class, "lazyStart");
+    private static final AtomicReferenceFieldUpdater<Promise, Executor> EXECUTOR =
+            AtomicReferenceFieldUpdater.newUpdater(Promise.class, Executor.class, "executor");
+    private static final AtomicReferenceFieldUpdater<Promise, Label> LABEL =
+            AtomicReferenceFieldUpdater.newUpdater(Promise.class, Label.class, "label");
+
+    private static final Object SETTLED = new Object();
+
+    private volatile boolean synchronous;
+    private boolean derived;
+
+    // either a Completion (settled), the top of the pending handlers stack (null when there are no handlers)
+    // or another Promise this one has been linked to and shares the settlement with
+    private volatile Object state;
+
+    // cancellation hooks of the work producing this promise, replaced by SETTLED when completed
+    private volatile Object cancellers;
+    private volatile int dependents;
+
+    // threads parked in await(), no monitors involved, so virtual threads do not pin their carriers
+    private volatile Waiter waiters;
+
+    // work of a lazy promise, started by the first subscription or await
+    private volatile Runnable lazyStart;
+
+    // created on first asynchronous callback, completed promises usually never need one
+    private volatile Executor executor;
+
+    // name and number for logging, created when named or printed, most promises are neither
+    private volatile Label label;
+
+    // shared completed instance, which must not be modified
+    private boolean shared;
 
 
     private static class Handler {
-        Callback onFulfilled;
-        Callback onRejected;
+        final Callback onFulfilled;
+        final Callback onRejected;
+        final boolean synchronous;
+        Handler next;
 
         public Handler(Callback onFulfilled, Callback onRejected) {
+            this(onFulfilled, onRejected, false);
+        }
+
+        public Handler(Callback onFulfilled, Callback onRejected, boolean synchronous) {
             this.onFulfilled = onFulfilled;
             this.onRejected = onRejected;
+            this.synchronous = synchronous;
+        }
+    }
+
+    private static final class Label {
+        final String name;
+        final long num;
+
+        Label(String name, long num) {
+            this.name = name;
+            this.num = num;
+        }
+    }
+
+    private static final class Trampoline {
+        final ArrayDeque<Runnable> queue = new ArrayDeque<>();
+        boolean running;
+        int depth;
+    }
+
+    private static class Completion {
+        final State state;
+        final Object result;
+
+        Completion(State state, Object result) {
+            this.state = state;
+            this.result = result;
+        }
+    }
+
+    // completion forced from outside of the producer (cancellation or timeout), aborts the work behind the promise
+    private static final class Abort extends Completion {
+        final boolean mayInterruptIfRunning;
+
+        Abort(State state, Object result, boolean mayInterruptIfRunning) {
+            super(state, result);
+            this.mayInterruptIfRunning = mayInterruptIfRunning;
+        }
+    }
+
+    private static final class Cancellers implements Callback<Boolean> {
+        final Callback<Boolean> first;
+        final Callback<Boolean> second;
+
+        Cancellers(Callback<Boolean> first, Callback<Boolean> second) {
+            this.first = first;
+            this.second = second;
+        }
+
+        @Override
+        public void onCallback(Boolean mayInterruptIfRunning) throws Exception {
+            runCanceller(first, mayInterruptIfRunning);
+            runCanceller(second, mayInterruptIfRunning);
         }
     }
 
-    protected Promise() {
-        num = counter.incrementAndGet();
+    Promise() {
         OptionalLogger.trace(log, "Promise created: {}", this);
     }
 
+    // already settled promise, without numbering, logging and pending state machinery
+    private Promise(Completion completion, boolean shared) {
+        this.state = completion;
+        this.cancellers = SETTLED;
+        this.shared = shared;
+    }
+
+    private static final Promise<?> NULL = new Promise<>(new Completion(State.Fulfilled, null), true);
+    private static final Promise<Boolean> TRUE = new Promise<>(new Completion(State.Fulfilled, Boolean.TRUE), true);
+    private static final Promise<Boolean> FALSE = new Promise<>(new Completion(State.Fulfilled, Boolean.FALSE), true);
+    private static final Promise<?> EMPTY_LIST = new Promise<>(new Completion(State.Fulfilled, Collections.emptyList()), true);
+
+    @SuppressWarnings("unchecked")
+    private static <T> Promise<T> completed(State state, Object result, boolean synchronous) {
+        if (state == State.Fulfilled && !synchronous) {
+            if (result == null) {
+                return (Promise<T>) NULL;
+            }
+            if (result == Boolean.TRUE) {
+                return (Promise<T>) TRUE;
+            }
+            if (result == Boolean.FALSE) {
+                return (Promise<T>) FALSE;
+            }
+            if (result == Collections.emptyList()) {
+                return (Promise<T>) EMPTY_LIST;
+            }
+        }
+        Promise<T> promise = new Promise<>(new Completion(state, result), false);
+        promise.synchronous = synchronous;
+        return promise;
+    }
+
+    private Executor executor() {
+        if (shared) {
+            // a serial executor on a JVM-wide instance would serialize unrelated callbacks of all its users,
+            // so they keep their order per registering thread instead
+            return SHARED_EXECUTOR.get();
+        }
+        Executor current = executor;
+        if (current == null) {
+            current = new SerialExecutor(Async.getService());
+            if (!EXECUTOR.compareAndSet(this, null, current)) {
+                current = executor;
+            }
+        }
+        return current;
+    }
+
     public Promise(final PromiseExecutor<V> promiseExecutor) {
-        executor.execute(new Runnable() {
+        if (getClass() != Promise.class) {
+            throw new UnsupportedOperationException("Promise is not meant to be subclassed");
+        }
+        executor().execute(executorRunnable(promiseExecutor));
+    }
+
+    private Runnable executorRunnable(final PromiseExecutor<V> promiseExecutor) {
+        return new Runnable() {
             @Override
             public void run() {
                 try {
@@ -62,29 +251,259 @@ public final class Promise<V> implements Future<V> {
                     doReject(cause);
                 }
             }
+        };
+    }
+
+    // computation starts when the first handler is attached or the promise is awaited, at most once
+    public static <V> Promise<V> lazy(final Callable<V> callable) {
+        final PromiseTask<V> task = new PromiseTask<>(callable);
+        Promise<V> promise = task;
+        promise.lazyStart = new Runnable() {
+            @Override
+            public void run() {
+                Async.execute(task);
+            }
+        };
+        return promise;
+    }
+
+    public static <V> Promise<V> lazy(final PromiseExecutor<V> promiseExecutor) {
+        final Promise<V> promise = new Promise<>();
+        promise.lazyStart = new Runnable() {
+            @Override
+            public void run() {
+                promise.executor().execute(promise.executorRunnable(promiseExecutor));
+            }
+        };
+        return promise;
+    }
+
+    private void startLazy() {
+        Runnable start = lazyStart;
+        if (start != null && LAZY_START.compareAndSet(this, start, null)) {
+            OptionalLogger.trace(log, "Lazy promise started: {}", this);
+            start.run();
+        }
+    }
+
+    // registration on a lazy promise that has not started yet is postponed until either the dependent promise
+    // is consumed itself or this one is started by another consumer, so chains built on lazy promises stay lazy
+    private void subscribe(Promise<?> dependent, final Handler handler) {
+        if (lazyStart == null) {
+            addHandler(handler);
+            return;
+        }
+        dependent.lazyStart = new Runnable() {
+            @Override
+            public void run() {
+                addHandler(handler);
+            }
+        };
+        if (!startWith(dependent)) {
+            dependent.startLazy();
+        }
+    }
+
+    // aggregate registers when consumed or when any of its lazy inputs gets started
+    private static void subscribe(Promise<?> result, Promise[] inputs, Runnable registration) {
+        result.lazyStart = registration;
+        boolean postponed = false;
+        for (Promise<?> input : inputs) {
+            if (input.startWith(result)) {
+                postponed = true;
+            }
+        }
+        if (!postponed) {
+            result.startLazy();
+        }
+    }
+
+    // chains start of the dependent promise to the start of this one, false when this one is not lazy or started
+    private boolean startWith(final Promise<?> dependent) {
+        if (lazyStart == null) {
+            return false;
+        }
+        return afterLazyStart(new Runnable() {
+            @Override
+            public void run() {
+                dependent.startLazy();
+            }
         });
     }
 
+    // runs the action once this lazy promise gets started, false when it is not lazy or already started
+    private boolean afterLazyStart(final Runnable action) {
+        while (true) {
+            final Runnable start = lazyStart;
+            if (start == null) {
+                return false;
+            }
+            Runnable both = new Runnable() {
+                @Override
+                public void run() {
+                    start.run();
+                    action.run();
+                }
+            };
+            if (LAZY_START.compareAndSet(this, start, both)) {
+                return true;
+            }
+        }
+    }
+
     public String getName() {
-        return name;
+        Label current = label;
+        return current != null ? current.name : null;
     }
 
+    // shared completed instances are copied instead of renamed
     public Promise<V> setName(String name) {
-        this.name = name;
+        if (shared) {
+            return new Promise<V>((Completion) state, false).setName(name);
+        }
+        while (true) {
+            Label current = label;
+            Label next = new Label(name, current != null ? current.num : 0);
+            if (LABEL.compareAndSet(this, current, next)) {
+                return this;
+            }
+        }
+    }
+
+    public boolean isSynchronous() {
+        return synchronous;
+    }
+
+    // when set, callbacks of this promise and of promises derived from it run on the completing thread
+    public Promise<V> setSynchronous(boolean synchronous) {
+        if (shared) {
+            return synchronous ? new Promise<V>((Completion) state, false).setSynchronous(true) : this;
+        }
+        this.synchronous = synchronous;
         return this;
     }
 
+    public static boolean isDefaultSynchronous() {
+        return defaultSynchronous;
+    }
+
+    public static void setDefaultSynchronous(boolean synchronous) {
+        defaultSynchronous = synchronous;
+    }
+
+    public static int getSynchronousMaxDepth() {
+        return synchronousMaxDepth;
+    }
+
+    public static void setSynchronousMaxDepth(int maxDepth) {
+        if (maxDepth < 0) {
+            throw new IllegalArgumentException("maxDepth < 0");
+        }
+        synchronousMaxDepth = maxDepth;
+    }
+
+    public static int getMaxAwaitSpins() {
+        return maxAwaitSpins;
+    }
+
+    // upper bound of busy-wait iterations before an awaiting thread parks, 0 disables spinning
+    public static void setMaxAwaitSpins(int maxSpins) {
+        if (maxSpins < 0) {
+            throw new IllegalArgumentException("maxSpins < 0");
+        }
+        maxAwaitSpins = maxSpins;
+        awaitSpins = Math.min(MIN_AWAIT_SPINS, maxSpins);
+    }
+
     @Override
     public String toString() {
-        String defaultString = "Promise #" + num;
-        if (name == null) {
+        if (shared) {
+            return "Promise (shared " + ((Completion) state).result + ")";
+        }
+        // numbered in order of first appearance in logs rather than creation
+        Label current = label;
+        while (current == null || current.num == 0) {
+            Label next = new Label(current != null ? current.name : null, counter.incrementAndGet());
+            if (LABEL.compareAndSet(this, current, next)) {
+                current = next;
+                break;
+            }
+            current = label;
+        }
+        String defaultString = "Promise #" + current.num;
+        if (current.name == null) {
             return defaultString;
         }
-        return name + " (" + defaultString + ")";
+        return current.name + " (" + defaultString + ")";
     }
 
     public State getState() {
-        return state;
+        Object current = root().state;
+        if (current instanceof Completion) {
+            return ((Completion) current).state;
+        }
+        return State.Pending;
+    }
+
+    public Promise<V> timeout(long timeoutMilliseconds) {
+        return timeout(timeoutMilliseconds, TimeUnit.MILLISECONDS);
+    }
+
+    // rejects this promise with TimeoutException when not completed in given time
+    public Promise<V> timeout(long timeout, TimeUnit unit) {
+        return abortOnTimeout(State.Rejected, null, timeout, unit);
+    }
+
+    public Promise<V> completeOnTimeout(V value, long timeoutMilliseconds) {
+        return completeOnTimeout(value, timeoutMilliseconds, TimeUnit.MILLISECONDS);
+    }
+
+    // fulfills this promise with given value when not completed in given time
+    public Promise<V> completeOnTimeout(V value, long timeout, TimeUnit unit) {
+        return abortOnTimeout(State.Fulfilled, value, timeout, unit);
+    }
+
+    // on a lazy promise the time counts from its start, so a timeout alone neither starts nor expires it
+    private Promise<V> abortOnTimeout(final State state, final V value, final long timeout, final TimeUnit unit) {
+        if (isDone()) {
+            return this;
+        }
+
+        Runnable arm = new Runnable() {
+            @Override
+            public void run() {
+                armTimeout(state, value, timeout, unit);
+            }
+        };
+        if (!afterLazyStart(arm)) {
+            arm.run();
+        }
+        return this;
+    }
+
+    private void armTimeout(final State state, final V value, long timeout, TimeUnit unit) {
+        if (isDone()) {
+            return;
+        }
+
+        final ScheduledFuture<?> timer = Async.schedule(new Runnable() {
+            @Override
+            public void run() {
+                Object result = state == State.Rejected ? new TimeoutException("Promise timeout") : value;
+                if (tryDone(new Abort(state, result, false))) {
+                    OptionalLogger.trace(log, "Promise timed out: {}", Promise.this);
+                }
+            }
+        }, timeout, unit);
+
+        Callback<Object> cancelTimer = new Callback<Object>() {
+            @Override
+            public void onCallback(Object ignore) throws Exception {
+                timer.cancel(false);
+            }
+        };
+        // timeout alone does not consume a lazy promise
+        pushHandler(new Handler(cancelTimer, cancelTimer, true), false);
     }
 
     public boolean isRejected() {
@@ -99,17 +518,18 @@ public final class Promise<V> implements Future<V> {
 
     @Override
     public boolean cancel(boolean mayInterruptIfRunning) {
-        return false;
+        return tryDone(new Abort(State.Rejected, new CancellationException("Promise cancelled"), mayInterruptIfRunning));
     }
 
     @Override
     public boolean isCancelled() {
-        return false;
+        Object current = root().state;
+        return current instanceof Abort && ((Abort) current).result instanceof CancellationException;
     }
 
     @Override
     public boolean isDone() {
-        return getState() == State.Fulfilled || getState() == State.Rejected;
+        return root().state instanceof Completion;
     }
 
     @Override
@@ -118,10 +538,12 @@ public final class Promise<V> implements Future<V> {
         await();
         try {
             throwCause();
+        } catch (CancellationException e) {
+            throw e;
         } catch (Throwable e) {
             throw new ExecutionException(e);
         }
-        return (V) result;
+        return (V) result();
     }
 
     public V get(long timeoutMilliseconds) throws InterruptedException, ExecutionException, TimeoutException {
@@ -134,10 +556,12 @@ public final class Promise<V> implements Future<V> {
         await(timeout, unit);
         try {
             throwCause();
+        } catch (CancellationException e) {
+            throw e;
         } catch (Throwable e) {
             throw new ExecutionException(e);
         }
-        return (V) result;
+        return (V) result();
     }
 
     @SuppressWarnings("unchecked")
@@ -146,7 +570,7 @@ public final class Promise<V> implements Future<V> {
 
         throwCause();
 
-        return (V) result;
+        return (V) result();
     }
 
     public V getValue() {
@@ -169,8 +593,17 @@ public final class Promise<V> implements Future<V> {
         }
     }
 
+    private Object result() {
+        Object current = root().state;
+        if (current instanceof Completion) {
+            return ((Completion) current).result;
+        }
+        return null;
+    }
+
     public void throwCause() throws Exception {
         if (getState() == State.Rejected) {
+            Object result = result();
             if (result instanceof Throwable) {
                 if (result instanceof Error) {
                     throw (Error) result;
@@ -189,87 +622,334 @@ public final class Promise<V> implements Future<V> {
         return getValue();
     }
 
-    protected Promise<V> doResolve() {
+    Promise<V> doResolve() {
         return doResolve(null);
     }
 
-    protected synchronized Promise<V> doResolve(V value) {
+    Promise<V> doResolve(V value) {
         done(State.Fulfilled, value);
         return this;
     }
 
-    protected synchronized Promise<V> doReject(Object cause) {
+    Promise<V> doReject(Object cause) {
         done(State.Rejected, cause);
         return this;
     }
 
-    protected synchronized void done(final State state, final Object result) {
-        if (isDone()) {
+    @SuppressWarnings("unchecked")
+    private Promise<V> root() {
+        Object current = state;
+        if (!(current instanceof Promise)) {
+            return this;
+        }
+
+        Promise root = (Promise) current;
+        Object next;
+        while ((next = root.state) instanceof Promise) {
+            root = (Promise) next;
+        }
+
+        if (current != root) {
+            STATE.compareAndSet(this, current, root);
+        }
+        return root;
+    }
+
+    void done(final State state, final Object result) {
+        if (!tryDone(new Completion(state, result))) {
+            if (root().state instanceof Abort) {
+                OptionalLogger.trace(log, "Ignoring completion of aborted promise: {}", this);
+                return;
+            }
             OptionalLogger.warn(log, "Change state attempt on promise already completed: {}", this);
             throw new IllegalStateException("Promise already completed, cannot change the state");
         }
+    }
+
+    private boolean tryDone(final Completion completion) {
+        Promise<V> target = this;
+        Object current;
+        while (true) {
+            current = target.state;
+            if (current instanceof Promise) {
+                target = target.root();
+                continue;
+            }
+            if (current instanceof Completion) {
+                return false;
+            }
+            if (STATE.compareAndSet(target, current, completion)) {
+                break;
+            }
+        }
+
+        target.onCompleted((Handler) current, completion);
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void onCompleted(Handler handlers, Completion completion) {
+        State state = completion.state;
+
+        // lazy work that has never started has nothing to cancel, nor subscriptions to release
+        Runnable notStarted = LAZY_START.getAndSet(this, null);
+
+        Object hooks = CANCELLERS.getAndSet(this, SETTLED);
+        if (completion instanceof Abort) {
+            onAbort(((Abort) completion).mayInterruptIfRunning);
+            if (hooks instanceof Callback && notStarted == null) {
+                runCanceller((Callback<Boolean>) hooks, ((Abort) completion).mayInterruptIfRunning);
+            }
+        }
 
-        if (state == State.Fulfilled) {
+        if (completion.result instanceof CancellationException && completion instanceof Abort) {
+            OptionalLogger.trace(log, "Promise cancelled: {}", this);
+        } else if (state == State.Fulfilled) {
             OptionalLogger.trace(log, "Promise fulfilled: {}", this);
         } else if (state == State.Rejected) {
             OptionalLogger.trace(log, "Promise rejected: {}", this);
         }
 
-        this.state = state;
-        this.result = result;
+        wakeWaiters();
 
-        synchronized (this) {
-            this.notifyAll();
+        Handler ordered = reverse(handlers);
+        while (ordered != null) {
+            Handler next = ordered.next;
+            ordered.next = null;
+            executeHandler(ordered, completion);
+            ordered = next;
         }
+    }
 
-        executeHandlers();
+    void addHandler(final Handler handler) {
+        addHandler(handler, true);
     }
 
-    protected synchronized void addHandler(final Handler handler) {
-        if (isDone()) {
-            executeHandler(handler);
-        } else {
-            handlers.add(handler);
+    private void addHandler(final Handler handler, boolean dependent) {
+        startLazy();
+        pushHandler(handler, dependent);
+    }
+
+    private void pushHandler(final Handler handler, boolean dependent) {
+        Promise<V> target = this;
+        while (true) {
+            Object current = target.state;
+            if (current instanceof Promise) {
+                target = target.root();
+                continue;
+            }
+            if (current instanceof Completion) {
+                target.executeHandler(handler, (Completion) current);
+                return;
+            }
+            handler.next = (Handler) current;
+            if (STATE.compareAndSet(target, current, handler)) {
+                if (dependent) {
+                    DEPENDENTS.incrementAndGet(target);
+                }
+                return;
+            }
         }
     }
 
-    private void executeHandlers() {
-        for (final Handler handler : handlers) {
-            executeHandler(handler);
+    // promise settled from outside of the producer, overridden by promises running their work themselves
+    void onAbort(boolean mayInterruptIfRunning) {
+    }
+
+    // removes pending handlers of the callback by replacing the stack with a filtered copy, nodes of the current
+    // stack are not modified, as completion may be reordering them concurrently
+    private void removeHandlers(Callback<?> callback) {
+        Promise<V> target = root();
+        while (true) {
+            Object current = target.state;
+            if (current instanceof Promise) {
+                target = target.root();
+                continue;
+            }
+            if (!(current instanceof Handler)) {
+                return;
+            }
+
+            boolean found = false;
+            Handler top = null;
+            Handler last = null;
+            for (Handler handler = (Handler) current; handler != null; handler = handler.next) {
+                if (handler.onFulfilled == callback) {
+                    found = true;
+                    continue;
+                }
+                Handler copy = new Handler(handler.onFulfilled, handler.onRejected, handler.synchronous);
+                if (last == null) {
+                    top = copy;
+                } else {
+                    last.next = copy;
+                }
+                last = copy;
+            }
+            if (!found || STATE.compareAndSet(target, current, top)) {
+                return;
+            }
         }
     }
 
-    private void executeHandler(final Handler handler) {
-        if (isDone()) {
-            if (getState() == State.Fulfilled && handler.onFulfilled == null) {
+    @SuppressWarnings("unchecked")
+    void addCanceller(Callback<Boolean> canceller) {
+        Promise<V> target = root();
+        while (true) {
+            Object current = target.cancellers;
+            if (current == SETTLED) {
+                if (target.state instanceof Promise) {
+                    target = target.root();
+                    continue;
+                }
+                Object completion = target.state;
+                if (completion instanceof Abort) {
+                    runCanceller(canceller, ((Abort) completion).mayInterruptIfRunning);
+                }
                 return;
             }
-            if (getState() == State.Rejected && handler.onRejected == null) {
+
+            Object next = current == null ? canceller : new Cancellers((Callback<Boolean>) current, canceller);
+            if (CANCELLERS.compareAndSet(target, current, next)) {
                 return;
             }
         }
+    }
+
+    private static void runCanceller(Callback<Boolean> canceller, boolean mayInterruptIfRunning) {
+        try {
+            canceller.onCallback(mayInterruptIfRunning);
+        } catch (Throwable e) {
+            OptionalLogger.error(log, "Promise cancellation callback {} error", canceller, e);
+        }
+    }
+
+    // called by a dependent promise that has been cancelled, cancels this one when nobody else waits for it
+    private void releaseDependent(boolean mayInterruptIfRunning) {
+        Promise<V> target = root();
+        if (DEPENDENTS.decrementAndGet(target) <= 0 && !target.isDone()) {
+            OptionalLogger.trace(log, "Cancelling promise without dependents: {}", target);
+            target.cancel(mayInterruptIfRunning);
+        }
+    }
+
+    private Callback<Boolean> releasingCanceller() {
+        return new Callback<Boolean>() {
+            @Override
+            public void onCallback(Boolean mayInterruptIfRunning) throws Exception {
+                releaseDependent(mayInterruptIfRunning);
+            }
+        };
+    }
+
+    // handlers are pushed onto a stack, so reverse it to keep registration order
+    private static Handler reverse(Handler stack) {
+        Handler ordered = null;
+        while (stack != null) {
+            Handler next = stack.next;
+            stack.next = ordered;
+            ordered = stack;
+            stack = next;
+        }
+        return ordered;
+    }
+
+    // makes pending inner promise share settlement with outer one, so chains of promises resolved
+    // with other promises (i.e. recursive thenAwait loops) collapse into a single pending promise;
+    // only an inner promise nobody else uses is linked, otherwise cancelling or timing out the outer one
+    // would settle it for its other dependents too
+    @SuppressWarnings("unchecked")
+    private static boolean link(Promise inner, Promise outer) {
+        Promise target = outer.root();
+        if (inner == target || inner.state != null || inner.dependents > 0 || inner.waiters != null) {
+            return false;
+        }
+        // handler registered meanwhile makes it fail
+        if (!STATE.compareAndSet(inner, null, target)) {
+            return false;
+        }
+
+        OptionalLogger.trace(log, "Promise {} linked to {}", inner, target);
+
+        // waiter that has raced with linking re-registers on the new root
+        inner.wakeWaiters();
+
+        Object hooks = CANCELLERS.getAndSet(inner, SETTLED);
+        if (hooks instanceof Callback) {
+            target.addCanceller((Callback<Boolean>) hooks);
+        }
+
+        // outer promise consumes inner one
+        inner.startLazy();
+        return true;
+    }
+
+    private void executeHandler(final Handler handler, final Completion completion) {
+        if (completion.state == State.Fulfilled && handler.onFulfilled == null) {
+            return;
+        }
+        if (completion.state == State.Rejected && handler.onRejected == null) {
+            return;
+        }
 
-        executor.execute(new Runnable() {
+        Runnable runnable = new Runnable() {
             @Override
             public void run() {
-                if (state == State.Fulfilled) {
+                if (completion.state == State.Fulfilled) {
                     try {
-                        onFulfillCall(handler.onFulfilled, Promise.this.result);
+                        onFulfillCall(handler.onFulfilled, completion.result);
                     } catch (Throwable e) {
                         OptionalLogger.error(log, "Promise onFulfill callback {} error", handler.onFulfilled, e);
                     }
                 } else {
                     try {
-                        onRejectCall(handler.onRejected, Promise.this.result);
+                        onRejectCall(handler.onRejected, completion.result);
                     } catch (Throwable e) {
                         OptionalLogger.error(log, "Promise onReject callback {} error", handler.onRejected, e);
                     }
                 }
             }
-        });
+        };
+
+        if (handler.synchronous || synchronous || defaultSynchronous) {
+            runSynchronously(runnable);
+        } else {
+            executor().execute(runnable);
+        }
+    }
+
+    // runs nested synchronous callbacks directly up to synchronousMaxDepth, deeper ones are queued
+    // and run by the outermost frame, so arbitrarily long chains keep constant stack depth
+    private static void runSynchronously(Runnable runnable) {
+        Trampoline trampoline = TRAMPOLINE.get();
+        if (!trampoline.running) {
+            trampoline.running = true;
+            try {
+                runnable.run();
+                Runnable next;
+                while ((next = trampoline.queue.poll()) != null) {
+                    next.run();
+                }
+            } finally {
+                trampoline.running = false;
+                Runnable left;
+                while ((left = trampoline.queue.poll()) != null) {
+                    Async.execute(left);
+                }
+            }
+        } else if (trampoline.depth < synchronousMaxDepth) {
+            trampoline.depth++;
+            try {
+                runnable.run();
+            } finally {
+                trampoline.depth--;
+            }
+        } else {
+            trampoline.queue.add(runnable);
+        }
     }
 
-    public synchronized Promise<V> onFulfill(Callback<V> onFulfilled) {
+    public Promise<V> onFulfill(Callback<V> onFulfilled) {
         addHandler(new Handler(onFulfilled, null));
         return this;
     }
@@ -285,7 +965,7 @@ public final class Promise<V> implements Future<V> {
         }
     }
 
-    public synchronized Promise<V> onReject(Callback<Throwable> onReject) {
+    public Promise<V> onReject(Callback<Throwable> onReject) {
         addHandler(new Handler(null, onReject));
         return this;
     }
@@ -308,8 +988,30 @@ public final class Promise<V> implements Future<V> {
 
     @SuppressWarnings("unchecked")
     private static void bindResultTo(final Object o, final Promise promise) {
-        if (o instanceof Future) {
-            FutureWatch.listen((Future) o, new ExecutionCallback<Object>() {
+        if (o instanceof Promise) {
+            Promise inner = (Promise) o;
+            if (inner.root() == promise.root()) {
+                promise.doReject(new IllegalStateException("Promise cannot be resolved with itself"));
+                return;
+            }
+            if (inner.derived && link(inner, promise)) {
+                return;
+            }
+            inner.addHandler(new Handler(new Callback<Object>() {
+                @Override
+                public void onCallback(Object value) throws Exception {
+                    bindResultTo(value, promise);
+                }
+            }, new Callback<Object>() {
+                @Override
+                public void onCallback(Object cause) throws Exception {
+                    promise.doReject(cause);
+                }
+            }, true));
+            promise.addCanceller(inner.releasingCanceller());
+        } else if (o instanceof Future) {
+            final Future future = (Future) o;
+            final ExecutionCallback<Object> callback = new ExecutionCallback<Object>() {
                 @Override
                 public void callback(Result result, Object value, Throwable cause) {
                     if (result.isSuccess()) {
@@ -318,23 +1020,58 @@ public final class Promise<V> implements Future<V> {
                         } else {
                             promise.doResolve(value);
                         }
+                    } else if (result.isCancelled()) {
+                        promise.cancel(false);
                     } else {
                         promise.doReject(cause);
                     }
                 }
-            });
+            };
+            FutureWatch.listen(future, callback);
+            promise.addCanceller(futureCanceller(future, callback));
         } else {
             promise.doResolve(o);
         }
     }
 
-    @SuppressWarnings("unchecked")
     public <R> Promise<R> then(final Transform<V, R> onFulfilled, final Transform<V, R> onRejected) {
+        return then(onFulfilled, onRejected, false);
+    }
+
+    public <R> Promise<R> thenSync(final Transform<V, R> onFulfilled) {
+        return then(onFulfilled, null, true);
+    }
+
+    public <R> Promise<R> thenSync(final Transform<V, R> onFulfilled, final Transform<V, R> onRejected) {
+        return then(onFulfilled, onRejected, true);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <R> Promise<R> then(final Transform<V, R> onFulfilled, final Transform<V, R> onRejected, boolean synchronousHandler) {
+        Object current = root().state;
+        if (current instanceof Completion && (synchronousHandler || synchronous || defaultSynchronous)) {
+            Completion completion = (Completion) current;
+            if (!(completion.result instanceof Future)) {
+                Promise<R> inline = thenInline(completion, completion.state == State.Fulfilled ? onFulfilled : onRejected);
+                if (inline != null) {
+                    return inline;
+                }
+            }
+        }
+
         final Deferred<R> deferred = Promise.defer();
+        deferred.getPromise().derived = true;
+        deferred.getPromise().addCanceller(releasingCanceller());
+        if (synchronous) {
+            deferred.getPromise().setSynchronous(true);
+        }
 
         final Callback<V> onRejectedCallback = new Callback<V>() {
             @Override
             public void onCallback(V argument) throws Exception {
+                if (deferred.getPromise().isDone()) {
+                    return;
+                }
                 if (onRejected != null) {
                     try {
                         Object value = onRejected.transform(argument);
@@ -351,6 +1088,9 @@ public final class Promise<V> implements Future<V> {
         final Callback<V> onFulfilledCallback = new Callback<V>() {
             @Override
             public void onCallback(V argument) throws Exception {
+                if (deferred.getPromise().isDone()) {
+                    return;
+                }
                 if (argument instanceof Promise) {
                     ((Promise) argument).onFulfill(this);
                     ((Promise) argument).onReject(onRejectedCallback);
@@ -374,11 +1114,44 @@ public final class Promise<V> implements Future<V> {
             }
         };
 
-        addHandler(new Handler(onFulfilledCallback, onRejectedCallback));
+        subscribe(deferred.getPromise(), new Handler(onFulfilledCallback, onRejectedCallback, synchronousHandler));
 
         return deferred.getPromise();
     }
 
+    // synchronous continuation of an already settled promise runs right away, without a pending promise;
+    // returns null when nested too deep, so the regular path queues it on the trampoline
+    @SuppressWarnings("unchecked")
+    private <R> Promise<R> thenInline(Completion completion, Transform<V, R> transform) {
+        if (transform == null) {
+            return completed(completion.state, completion.result, synchronous);
+        }
+
+        Trampoline trampoline = TRAMPOLINE.get();
+        if (trampoline.depth >= synchronousMaxDepth) {
+            return null;
+        }
+
+        Object value;
+        trampoline.depth++;
+        try {
+            value = transform.transform((V) completion.result);
+        } catch (Throwable cause) {
+            return completed(State.Rejected, cause, synchronous);
+        } finally {
+            trampoline.depth--;
+        }
+
+        if (value instanceof Future) {
+            Promise<R> promise = new Promise<>();
+            promise.derived = true;
+            promise.synchronous = synchronous;
+            bindResultTo(value, promise);
+            return promise;
+        }
+        return completed(State.Fulfilled, value, synchronous);
+    }
+
     public <R> Promise<R> then(final Transform<V, R> onFulfilled) {
         return then(onFulfilled, null);
     }
@@ -422,6 +1195,11 @@ public final class Promise<V> implements Future<V> {
         return then((Transform<V, R>) onFulfilled, onRejected);
     }
 
+    @SuppressWarnings("unchecked")
+    public <R> Promise<R> thenAwaitSync(Transform<V, Future<R>> onFulfilled) {
+        return thenSync((Transform<V, R>) onFulfilled);
+    }
+
     private Promise<V> then(Callback<V> onFulfilled) {
         return then(onFulfilled, null);
     }
@@ -431,11 +1209,36 @@ public final class Promise<V> implements Future<V> {
         return catchHandle(catchHandler);
     }
 
+    // fulfilled value passes through unchanged
+    @SuppressWarnings("unchecked")
     public <R> Promise<R> catchHandle(final Transform<Throwable, R> catchHandler) {
-        Deferred<R> deferred = Promise.defer();
-        onReject(new Callback<Throwable>() {
+        Object current = root().state;
+        if (current instanceof Completion && (synchronous || defaultSynchronous)) {
+            Completion completion = (Completion) current;
+            if (!(completion.result instanceof Future)) {
+                Promise<R> inline = thenInline(completion, completion.state == State.Rejected ? (Transform) catchHandler : null);
+                if (inline != null) {
+                    return inline;
+                }
+            }
+        }
+
+        final Deferred<R> deferred = Promise.defer();
+        deferred.getPromise().derived = true;
+        deferred.getPromise().addCanceller(releasingCanceller());
+        subscribe(deferred.getPromise(), new Handler(new Callback<Object>() {
+            @Override
+            public void onCallback(Object value) throws Exception {
+                if (!deferred.getPromise().isDone()) {
+                    bindResultTo(value, deferred.getPromise());
+                }
+            }
+        }, new Callback<Throwable>() {
             @Override
             public void onCallback(Throwable rejectedValue) throws Exception {
+                if (deferred.getPromise().isDone()) {
+                    return;
+                }
                 try {
                     R val = catchHandler.transform(rejectedValue);
                     deferred.resolve(val);
@@ -443,10 +1246,20 @@ public final class Promise<V> implements Future<V> {
                     deferred.reject(e);
                 }
             }
-        });
+        }));
         return deferred.getPromise();
     }
 
+    private static <T> Callback<Boolean> futureCanceller(final Future<T> future, final ExecutionCallback<T> callback) {
+        return new Callback<Boolean>() {
+            @Override
+            public void onCallback(Boolean mayInterruptIfRunning) throws Exception {
+                FutureWatch.unlisten(future, callback);
+                future.cancel(mayInterruptIfRunning);
+            }
+        };
+    }
+
     public static <T> Deferred<T> defer() {
         final Promise<T> promise = new Promise<>();
 
@@ -484,63 +1297,48 @@ public final class Promise<V> implements Future<V> {
 
             @Override
             public Promise<T> execute(final Runnable runnable, final T value) {
-                Async.execute(new Runnable() {
-                    @Override
-                    public void run() {
-                        OptionalLogger.trace(log, "Promise execution: {}", getPromise());
-                        try {
-                            runnable.run();
-                            promise.doResolve(value);
-                        } catch (Throwable cause) {
-                            promise.doReject(cause);
-                        }
-
-                    }
-                });
-
-                return promise;
+                return executeTask(new PromiseTask<>(runnable, value));
             }
 
             @Override
             public Promise<T> execute(final Callable<T> callable) {
-                Async.execute(new Runnable() {
-                    @Override
-                    public void run() {
-                        OptionalLogger.trace(log, "Promise execution: {}", getPromise());
-                        try {
-                            T value = callable.call();
-                            promise.doResolve(value);
-                        } catch (Throwable cause) {
-                            promise.doReject(cause);
-                        }
-                    }
-                });
-
-                return promise;
+                return executeTask(new PromiseTask<>(callable));
             }
 
             @Override
             public <IN> Promise<T> execute(IN input, Transform<IN, T> transform) {
-                return execute(new Callable<T>() {
+                return executeTask(new PromiseTask<>(transform, input));
+            }
+
+            // task settles the deferred promise through the link, its cancellation aborts the task
+            private Promise<T> executeTask(final PromiseTask<T> task) {
+                link(task, promise);
+                promise.addCanceller(new Callback<Boolean>() {
                     @Override
-                    public T call() throws Exception {
-                        return transform.transform(input);
+                    public void onCallback(Boolean mayInterruptIfRunning) throws Exception {
+                        task.onAbort(mayInterruptIfRunning);
                     }
                 });
+                Async.execute(task);
+                return promise;
             }
 
             @Override
             public Promise<T> bindTo(Future<T> future) {
-                FutureWatch.listen(future, new ExecutionCallback<T>() {
+                ExecutionCallback<T> callback = new ExecutionCallback<T>() {
                     @Override
                     public void callback(Result result, T value, Throwable cause) {
                         if (result.isSuccess()) {
                             promise.doResolve(value);
+                        } else if (result.isCancelled()) {
+                            promise.cancel(false);
                         } else {
                             promise.doReject(cause);
                         }
                     }
-                });
+                };
+                FutureWatch.listen(future, callback);
+                promise.addCanceller(futureCanceller(future, callback));
                 return promise;
             }
 
@@ -550,7 +1348,8 @@ public final class Promise<V> implements Future<V> {
                     throw new IllegalStateException("Could not bind same promise");
                 }
 
-                promise.onDone(new Callback<T>() {
+                promise.addCanceller(otherPromise.releasingCanceller());
+                otherPromise.onDone(new Callback<T>() {
                     @Override
                     public void onCallback(T value) throws Exception {
                         resolve(value);
@@ -573,15 +1372,19 @@ public final class Promise<V> implements Future<V> {
     }
 
     public static <T> Promise<T> reject(Throwable reason) {
-        return Promise.<T>defer().reject(reason);
+        return completed(State.Rejected, reason, false);
     }
 
     public static <V> Promise<V> resolve() {
         return resolve(null);
     }
 
+    // settled promises of null, boolean and empty list values are shared instances
     public static <T> Promise<T> resolve(T value) {
-        return Promise.<T>defer().resolve(value);
+        if (value instanceof Future) {
+            return Promise.<T>defer().resolve(value);
+        }
+        return completed(State.Fulfilled, value, false);
     }
 
     @SuppressWarnings("unchecked")
@@ -618,61 +1421,429 @@ public final class Promise<V> implements Future<V> {
         return deferred.getPromise();
     }
 
+    // fulfilled with values in inputs order, rejected on the first input rejection
+    public static <T> Promise<List<T>> all(List<? extends Promise<? extends T>> promises) {
+        return all(promises, false);
+    }
+
+    // remaining inputs are cancelled on failure unless other dependents still wait for them
+    public static <T> Promise<List<T>> all(List<? extends Promise<? extends T>> promises, boolean cancelRemainingOnFailure) {
+        Promise[] inputs = promises.toArray(new Promise[promises.size()]);
+        return new All<List<T>>(inputs, new Object[inputs.length], cancelRemainingOnFailure).start();
+    }
+
+    // fulfilled with the input promises once all of them are settled, each one carrying its own outcome
+    public static <T> Promise<List<Promise<T>>> allSettled(List<? extends Promise<T>> promises) {
+        Promise[] inputs = promises.toArray(new Promise[promises.size()]);
+        return new All<List<Promise<T>>>(inputs, null, false).start();
+    }
+
+    // single countdown per aggregate, each input costs one handler and one slot only
+    private static final class All<R> implements Callback<Boolean>, Settlement, Runnable {
+        private static final AtomicIntegerFieldUpdater<All> REMAINING =
+                AtomicIntegerFieldUpdater.newUpdater(All.class, "remaining");
+
+        private final Promise<R> result = new Promise<>();
+        private final Promise[] inputs;
+        private final Object[] values;
+        private final boolean cancelRemainingOnFailure;
+        private volatile int remaining;
+
+        All(Promise[] inputs, Object[] values, boolean cancelRemainingOnFailure) {
+            this.inputs = inputs;
+            this.values = values;
+            this.cancelRemainingOnFailure = cancelRemainingOnFailure;
+            this.remaining = inputs.length;
+        }
+
+        Promise<R> start() {
+            if (inputs.length == 0) {
+                complete();
+                return result;
+            }
+
+            result.addCanceller(this);
+            subscribe(result, inputs, this);
+            return result;
+        }
+
+        // registers on the inputs, postponed until the result is consumed when any input is lazy
+        @Override
+        public void run() {
+            for (int i = 0; i < inputs.length && !result.isDone(); i++) {
+                Slot slot = new Slot(this, i);
+                inputs[i].addHandler(new Handler(slot, slot, true));
+            }
+        }
+
+        @Override
+        public void settled(int index, Object value) {
+            if (values != null) {
+                if (inputs[index].getState() == State.Rejected) {
+                    if (result.tryDone(new Completion(State.Rejected, value)) && cancelRemainingOnFailure) {
+                        release(true);
+                    }
+                    return;
+                }
+                values[index] = value;
+            }
+            if (REMAINING.decrementAndGet(this) == 0) {
+                complete();
+            }
+        }
+
+        private void complete() {
+            Object list = Arrays.asList(values != null ? values : inputs);
+            result.tryDone(new Completion(State.Fulfilled, list));
+        }
+
+        // aggregate cancelled
+        @Override
+        public void onCallback(Boolean mayInterruptIfRunning) {
+            release(mayInterruptIfRunning);
+        }
+
+        private void release(boolean mayInterruptIfRunning) {
+            releaseInputs(inputs, mayInterruptIfRunning);
+        }
+    }
+
+    private static void releaseInputs(Promise[] inputs, boolean mayInterruptIfRunning) {
+        for (Promise input : inputs) {
+            if (!input.isDone()) {
+                input.releaseDependent(mayInterruptIfRunning);
+            }
+        }
+    }
+
+    // aggregate of many input promises
+    private interface Settlement {
+        void settled(int index, Object value);
+    }
+
+    private static final class Slot implements Callback<Object> {
+        private final Settlement settlement;
+        private final int index;
+
+        Slot(Settlement settlement, int index) {
+            this.settlement = settlement;
+            this.index = index;
+        }
+
+        @Override
+        public void onCallback(Object value) {
+            settlement.settled(index, value);
+        }
+    }
+
+    // settles with the first outcome, either fulfillment or rejection
     @SuppressWarnings("unchecked")
-    public static Promise race(Promise... promises) {
-        final Deferred deferred = Promise.defer();
-        for (Promise promise : promises) {
-            promise.onDone(new Callback() {
-                @Override
-                public void onCallback(Object argument) throws Exception {
-                    synchronized (deferred) {
-                        if (!deferred.getPromise().isDone()) {
-                            deferred.resolve(argument);
+    public static Promise race(final Promise... promises) {
+        final Promise result = new Promise<>();
+        final Callback<Object> onFulfilled = new Callback<Object>() {
+            @Override
+            public void onCallback(Object argument) throws Exception {
+                result.tryDone(new Completion(State.Fulfilled, argument));
+            }
+        };
+        final Callback<Object> onRejected = new Callback<Object>() {
+            @Override
+            public void onCallback(Object argument) throws Exception {
+                result.tryDone(new Completion(State.Rejected, argument));
+            }
+        };
+
+        subscribe(result, promises, new Runnable() {
+            @Override
+            public void run() {
+                for (Promise promise : promises) {
+                    promise.onDone(onFulfilled, onRejected);
+                }
+            }
+        });
+
+        if (promises.length == 0) {
+            result.tryDone(new Completion(State.Fulfilled, null));
+        }
+
+        return result;
+    }
+
+    // first fulfilled value, rejected with PromisesRejectedException only when all inputs are rejected
+    @SuppressWarnings("unchecked")
+    public static <T> Promise<T> any(List<? extends Promise<? extends T>> promises) {
+        Promise[] inputs = promises.toArray(new Promise[promises.size()]);
+        if (inputs.length == 0) {
+            return Promise.reject(new PromisesRejectedException(Collections.emptyList()));
+        }
+        return new Quorum<T>(inputs, 1, true).start();
+    }
+
+    // first count fulfilled values in fulfillment order, rejected as soon as the quorum cannot be reached
+    public static <T> Promise<List<T>> some(int count, List<? extends Promise<? extends T>> promises) {
+        Promise[] inputs = promises.toArray(new Promise[promises.size()]);
+        if (count < 0 || count > inputs.length) {
+            throw new IllegalArgumentException("count has to be between 0 and " + inputs.length);
+        }
+        if (count == 0) {
+            return Promise.resolve(Collections.<T>emptyList());
+        }
+        return new Quorum<List<T>>(inputs, count, false).start();
+    }
+
+    // losers are released once the outcome is decided, so they are cancelled unless other dependents wait for them
+    private static final class Quorum<R> implements Callback<Boolean>, Settlement, Runnable {
+        private static final AtomicIntegerFieldUpdater<Quorum> CLAIMED =
+                AtomicIntegerFieldUpdater.newUpdater(Quorum.class, "claimed");
+        private static final AtomicIntegerFieldUpdater<Quorum> STORED =
+                AtomicIntegerFieldUpdater.newUpdater(Quorum.class, "stored");
+        private static final AtomicIntegerFieldUpdater<Quorum> FAILED =
+                AtomicIntegerFieldUpdater.newUpdater(Quorum.class, "failed");
+
+        private final Promise<R> result = new Promise<>();
+        private final Promise[] inputs;
+        private final int needed;
+        private final boolean single;
+        private final Object[] values;
+        private final Object[] causes;
+        private volatile int claimed;
+        private volatile int stored;
+        private volatile int failed;
+
+        Quorum(Promise[] inputs, int needed, boolean single) {
+            this.inputs = inputs;
+            this.needed = needed;
+            this.single = single;
+            this.values = new Object[needed];
+            this.causes = new Object[inputs.length];
+        }
+
+        Promise<R> start() {
+            result.addCanceller(this);
+            subscribe(result, inputs, this);
+            return result;
+        }
+
+        // registers on the inputs, postponed until the result is consumed when any input is lazy
+        @Override
+        public void run() {
+            for (int i = 0; i < inputs.length && !result.isDone(); i++) {
+                Slot slot = new Slot(this, i);
+                inputs[i].addHandler(new Handler(slot, slot, true));
+            }
+        }
+
+        @Override
+        public void settled(int index, Object value) {
+            if (result.isDone()) {
+                return;
+            }
+
+            if (inputs[index].getState() == State.Fulfilled) {
+                int position = CLAIMED.getAndIncrement(this);
+                if (position < needed) {
+                    values[position] = value;
+                    // values are visible once all of the claimed positions are stored
+                    if (STORED.incrementAndGet(this) == needed) {
+                        Object outcome = single ? values[0] : Arrays.asList(values);
+                        if (result.tryDone(new Completion(State.Fulfilled, outcome))) {
+                            release(true);
                         }
                     }
                 }
-            }, new Callback() {
-                @Override
-                public void onCallback(Object argument) throws Exception {
-                    synchronized (deferred) {
-                        if (!deferred.getPromise().isDone()) {
-                            deferred.reject(argument);
+            } else {
+                causes[index] = value;
+                if (FAILED.incrementAndGet(this) == inputs.length - needed + 1) {
+                    List<Object> rejected = new ArrayList<>();
+                    for (int i = 0; i < inputs.length; i++) {
+                        if (causes[i] != null || inputs[i].getState() == State.Rejected) {
+                            rejected.add(causes[i]);
                         }
                     }
+                    if (result.tryDone(new Completion(State.Rejected, new PromisesRejectedException(rejected)))) {
+                        release(true);
+                    }
                 }
-            });
+            }
         }
 
-        if (promises.length == 0) {
-            deferred.resolve();
+        // aggregate cancelled
+        @Override
+        public void onCallback(Boolean mayInterruptIfRunning) {
+            release(mayInterruptIfRunning);
         }
 
-        return deferred.getPromise();
+        private void release(boolean mayInterruptIfRunning) {
+            releaseInputs(inputs, mayInterruptIfRunning);
+        }
     }
 
     public static void await(Promise... promises) throws InterruptedException {
+        awaitSettled(promises.length, 0, promises);
+    }
+
+    public static void await(long timeout, TimeUnit unit, Promise... promises) throws InterruptedException, TimeoutException {
+        if (!awaitSettled(promises.length, deadline(timeout, unit), promises)) {
+            throw new TimeoutException("Promises awaiting timeout");
+        }
+    }
+
+    // returns a settled promise, the first one in arguments order when several are settled already
+    public static Promise<?> awaitAny(Promise... promises) throws InterruptedException {
+        awaitSettled(1, 0, promises);
+        return firstSettled(promises);
+    }
+
+    public static Promise<?> awaitAny(long timeout, TimeUnit unit, Promise... promises) throws InterruptedException, TimeoutException {
+        if (!awaitSettled(1, deadline(timeout, unit), promises)) {
+            throw new TimeoutException("Promises awaiting timeout");
+        }
+        return firstSettled(promises);
+    }
+
+    public static void awaitSome(int count, Promise... promises) throws InterruptedException {
+        awaitSettled(count, 0, promises);
+    }
+
+    public static void awaitSome(int count, long timeout, TimeUnit unit, Promise... promises) throws InterruptedException, TimeoutException {
+        if (!awaitSettled(count, deadline(timeout, unit), promises)) {
+            throw new TimeoutException("Promises awaiting timeout");
+        }
+    }
+
+    // 0 stands for no deadline, far ones are capped so that deadline - nanoTime() cannot overflow
+    private static long deadline(long timeout, TimeUnit unit) {
+        long nanos = Math.min(unit.toNanos(timeout), MAX_TIMEOUT_NANOS);
+        return (System.nanoTime() + nanos) | 1L;
+    }
+
+    private static Promise<?> firstSettled(Promise[] promises) {
         for (Promise promise : promises) {
-            promise.await();
+            if (promise.isDone()) {
+                return promise;
+            }
+        }
+        throw new IllegalStateException("No promise settled");
+    }
+
+    // a single countdown shared by all promises, the awaiting thread parks once and is woken once
+    private static boolean awaitSettled(int count, long deadline, Promise<?>[] promises) throws InterruptedException {
+        if (count < 0 || count > promises.length) {
+            throw new IllegalArgumentException("count has to be between 0 and " + promises.length);
+        }
+        if (count == 0) {
+            return true;
+        }
+
+        Countdown countdown = new Countdown(count, deadline);
+        for (Promise<?> promise : promises) {
+            if (countdown.isSettled()) {
+                break;
+            }
+            if (promise.isDone()) {
+                countdown.onCallback(null);
+            } else {
+                // handlers are stack nodes, so every promise needs its own one
+                promise.addHandler(new Handler(countdown, countdown, true), false);
+            }
+        }
+
+        if (!countdown.isSettled()) {
+            if (Thread.currentThread() instanceof ForkJoinWorkerThread) {
+                ForkJoinPool.managedBlock(countdown);
+            } else {
+                countdown.block();
+            }
+        }
+        countdown.thread = null;
+
+        // after a timeout or when fewer promises were needed, the rest would keep a dead handler each
+        for (Promise<?> promise : promises) {
+            if (!promise.isDone()) {
+                promise.removeHandlers(countdown);
+            }
+        }
+        return countdown.isSettled();
+    }
+
+    private static final class Countdown implements Callback<Object>, ForkJoinPool.ManagedBlocker {
+        private static final AtomicIntegerFieldUpdater<Countdown> REMAINING =
+                AtomicIntegerFieldUpdater.newUpdater(Countdown.class, "remaining");
+
+        private final long deadline;
+        private volatile int remaining;
+        volatile Thread thread = Thread.currentThread();
+
+        Countdown(int count, long deadline) {
+            this.remaining = count;
+            this.deadline = deadline;
+        }
+
+        boolean isSettled() {
+            return remaining <= 0;
+        }
+
+        @Override
+        public void onCallback(Object ignore) {
+            if (REMAINING.decrementAndGet(this) == 0) {
+                Thread waiting = thread;
+                if (waiting != null) {
+                    LockSupport.unpark(waiting);
+                }
+            }
+        }
+
+        @Override
+        public boolean block() throws InterruptedException {
+            while (!isSettled()) {
+                if (Thread.interrupted()) {
+                    thread = null;
+                    throw new InterruptedException();
+                }
+                if (deadline != 0) {
+                    long left = deadline - System.nanoTime();
+                    if (left <= 0) {
+                        return true;
+                    }
+                    LockSupport.parkNanos(this, left);
+                } else {
+                    LockSupport.park(this);
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public boolean isReleasable() {
+            return isSettled() || (deadline != 0 && deadline - System.nanoTime() <= 0);
         }
     }
 
     public Promise<V> await() throws InterruptedException {
+        startLazy();
         if (!isDone()) {
-            synchronized (this) {
-                if (!isDone()) {
-                    this.wait();
-                }
+            if (Thread.currentThread() instanceof ForkJoinWorkerThread) {
+                // let the work-stealing pool compensate the blocked worker, so callbacks still have threads to run on
+                ForkJoinPool.managedBlock(new AwaitBlocker(this, 0));
+            } else {
+                awaitDone(0);
             }
         }
         return this;
     }
 
     public Promise<V> await(long timeoutMilliseconds) throws InterruptedException, TimeoutException {
+        return await(timeoutMilliseconds, TimeUnit.MILLISECONDS);
+    }
+
+    public Promise<V> await(long timeout, TimeUnit unit) throws InterruptedException, TimeoutException {
+        startLazy();
         if (!isDone()) {
-            synchronized (this) {
-                if (!isDone()) {
-                    this.wait(timeoutMilliseconds);
-                }
+            long deadline = deadline(timeout, unit);
+            if (Thread.currentThread() instanceof ForkJoinWorkerThread) {
+                ForkJoinPool.managedBlock(new AwaitBlocker(this, deadline));
+            } else {
+                awaitDone(deadline);
             }
             if (!isDone()) {
                 throw new TimeoutException("Promise awaiting timeout");
@@ -681,18 +1852,137 @@ public final class Promise<V> implements Future<V> {
         return this;
     }
 
-    public Promise<V> await(long timeout, TimeUnit unit) throws InterruptedException, TimeoutException {
-        if (!isDone()) {
-            synchronized (this) {
-                if (!isDone()) {
-                    this.wait(unit.toMillis(timeout));
+    private void awaitDone(long deadline) throws InterruptedException {
+        if (spinUntilDone()) {
+            return;
+        }
+
+        Promise<V> target = null;
+        Waiter waiter = null;
+        try {
+            while (!isDone()) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+
+                Promise<V> root = root();
+                if (waiter == null || waiter.thread == null || root != target) {
+                    if (waiter != null) {
+                        target.removeWaiter(waiter);
+                    }
+                    target = root;
+                    waiter = new Waiter();
+                    target.pushWaiter(waiter);
+                    // re-check after pushing, settlement could have missed the new waiter
+                    continue;
+                }
+
+                if (deadline != 0) {
+                    long left = deadline - System.nanoTime();
+                    if (left <= 0) {
+                        return;
+                    }
+                    if (left > SPIN_FOR_TIMEOUT_THRESHOLD) {
+                        LockSupport.parkNanos(this, left);
+                    } else {
+                        SpinWait.onSpinWait();
+                    }
+                } else {
+                    LockSupport.park(this);
                 }
             }
-            if (!isDone()) {
-                throw new TimeoutException("Promise awaiting timeout");
+        } finally {
+            if (waiter != null) {
+                target.removeWaiter(waiter);
             }
         }
-        return this;
+    }
+
+    // promises awaited right before settling (i.e. short task on another core) are cheaper to spin on
+    // than to park and unpark; spin budget grows when spinning pays off and shrinks when it does not
+    private boolean spinUntilDone() {
+        int spins = awaitSpins;
+        for (int i = 0; i < spins; i++) {
+            if (isDone()) {
+                awaitSpins = Math.min(spins << 1, maxAwaitSpins);
+                return true;
+            }
+            SpinWait.onSpinWait();
+        }
+        if (spins > 0) {
+            awaitSpins = Math.max(spins >> 1, Math.min(MIN_AWAIT_SPINS, maxAwaitSpins));
+        }
+        return false;
+    }
+
+    private static final class Waiter {
+        volatile Thread thread = Thread.currentThread();
+        volatile Waiter next;
+    }
+
+    private void pushWaiter(Waiter waiter) {
+        Waiter current;
+        do {
+            current = waiters;
+            waiter.next = current;
+        } while (!WAITERS.compareAndSet(this, current, waiter));
+    }
+
+    // unlinks abandoned (timed out, interrupted or already woken) waiters
+    private void removeWaiter(Waiter waiter) {
+        waiter.thread = null;
+        retry:
+        while (true) {
+            Waiter pred = null;
+            Waiter next;
+            for (Waiter current = waiters; current != null; current = next) {
+                next = current.next;
+                if (current.thread != null) {
+                    pred = current;
+                } else if (pred != null) {
+                    pred.next = next;
+                    if (pred.thread == null) {
+                        continue retry;
+                    }
+                } else if (!WAITERS.compareAndSet(this, current, next)) {
+                    continue retry;
+                }
+            }
+            return;
+        }
+    }
+
+    private void wakeWaiters() {
+        Waiter waiter = WAITERS.getAndSet(this, null);
+        while (waiter != null) {
+            Thread thread = waiter.thread;
+            if (thread != null) {
+                waiter.thread = null;
+                LockSupport.unpark(thread);
+            }
+            waiter = waiter.next;
+        }
+    }
+
+    private static final class AwaitBlocker implements ForkJoinPool.ManagedBlocker {
+        private final Promise<?> promise;
+        private final long deadline;
+
+        AwaitBlocker(Promise<?> promise, long deadline) {
+            this.promise = promise;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public boolean block() throws InterruptedException {
+            promise.awaitDone(deadline);
+            return true;
+        }
+
+        @Override
+        public boolean isReleasable() {
+            return promise.isDone() || (deadline != 0 && deadline - System.nanoTime() <= 0);
+        }
     }
 
     public Promise<V> awaitUnterruptibly() {
@@ -706,25 +1996,137 @@ public final class Promise<V> implements Future<V> {
     }
 
     public static Promise<?> execute(Runnable runnable) {
-        return Promise.defer().execute(runnable);
+        return execute(runnable, (Object) null);
     }
 
     public static <V> Promise<V> execute(Runnable runnable, V value) {
-        return Promise.<V>defer().execute(runnable, value);
+        return submit(new PromiseTask<>(runnable, value));
     }
 
     public static <IN, OUT> Promise<OUT> execute(IN input, Transform<IN, OUT> transform) {
-        return Promise.<OUT>defer().execute(input, transform);
+        return submit(new PromiseTask<>(transform, input));
     }
 
     public static <V> Promise<V> execute(Callable<V> callable) {
-        return Promise.<V>defer().execute(callable);
+        return submit(new PromiseTask<>(callable));
+    }
+
+    // the task is both the submitted runnable and the returned promise
+    private static <V> Promise<V> submit(PromiseTask<V> task) {
+        Async.execute(task);
+        return task;
+    }
+
+    // fulfilled with given value after given time, cancelling it cancels the timer
+    public static <V> Promise<V> delay(final V value, long delay, TimeUnit unit) {
+        final Promise<V> promise = new Promise<>();
+        final ScheduledFuture<?> timer = Async.schedule(new Runnable() {
+            @Override
+            public void run() {
+                promise.tryDone(new Completion(State.Fulfilled, value));
+            }
+        }, delay, unit);
+        promise.addCanceller(new Callback<Boolean>() {
+            @Override
+            public void onCallback(Boolean mayInterruptIfRunning) throws Exception {
+                timer.cancel(false);
+            }
+        });
+        return promise;
     }
 
     public static <V> Promise<V> from(Future<V> future) {
         if (future instanceof Promise) {
             return (Promise<V>) future;
         }
+        if (future instanceof CompletionStage) {
+            // a future that is also a completion stage completes both with the same value
+            @SuppressWarnings("unchecked")
+            CompletionStage<V> stage = (CompletionStage<V>) future;
+            return fromCompletionStage(stage);
+        }
         return Promise.<V>defer().bindTo(future);
     }
+
+    public static <V> Promise<V> fromCompletionStage(final CompletionStage<V> stage) {
+        if (stage instanceof PromiseCompletableFuture) {
+            return ((PromiseCompletableFuture<V>) stage).promise;
+        }
+
+        final Promise<V> promise = new Promise<>();
+        promise.addCanceller(new Callback<Boolean>() {
+            @Override
+            public void onCallback(Boolean mayInterruptIfRunning) throws Exception {
+                if (stage instanceof Future) {
+                    ((Future) stage).cancel(mayInterruptIfRunning);
+                }
+            }
+        });
+        stage.whenComplete(new BiConsumer<V, Throwable>() {
+            @Override
+            public void accept(V value, Throwable cause) {
+                if (cause == null) {
+                    promise.doResolve(value);
+                } else {
+                    if (cause instanceof CompletionException && cause.getCause() != null) {
+                        cause = cause.getCause();
+                    }
+                    if (cause instanceof CancellationException) {
+                        promise.cancel(false);
+                    } else {
+                        promise.doReject(cause);
+                    }
+                }
+            }
+        });
+        return promise;
+    }
+
+    public CompletionStage<V> toCompletionStage() {
+        return toCompletableFuture();
+    }
+
+    // view completed by a single synchronous handler, cancelling it releases this promise like any other dependent
+    public CompletableFuture<V> toCompletableFuture() {
+        final PromiseCompletableFuture<V> future = new PromiseCompletableFuture<>(this);
+        addHandler(new Handler(new Callback<V>() {
+            @Override
+            public void onCallback(V value) throws Exception {
+                future.complete(value);
+            }
+        }, new Callback<Object>() {
+            @Override
+            public void onCallback(Object cause) throws Exception {
+                if (isCancelled()) {
+                    future.cancelFromPromise();
+                } else if (cause instanceof Throwable) {
+                    future.completeExceptionally((Throwable) cause);
+                } else {
+                    future.completeExceptionally(new PromiseRejectedException(cause));
+                }
+            }
+        }, true));
+        return future;
+    }
+
+    private static final class PromiseCompletableFuture<V> extends CompletableFuture<V> {
+        final Promise<V> promise;
+
+        PromiseCompletableFuture(Promise<V> promise) {
+            this.promise = promise;
+        }
+
+        void cancelFromPromise() {
+            super.cancel(false);
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean cancelled = super.cancel(mayInterruptIfRunning);
+            if (cancelled) {
+                promise.releaseDependent(mayInterruptIfRunning);
+            }
+            return cancelled;
+        }
+    }
 }
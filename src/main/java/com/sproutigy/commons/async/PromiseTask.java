@@ -0,0 +1,111 @@
+package com.sproutigy.commons.async;
+
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+// Promise that is also the Runnable computing it, like FutureTask: the same object is submitted to an executor
+// and handed out as the result, so executing a task costs a single allocation.
+// Cancelling the promise interrupts the computation when it is running and mayInterruptIfRunning is set.
+public final class PromiseTask<V> extends Promise<V> implements RunnableFuture<V> {
+
+    private static Object log = OptionalLogger.getLogger(PromiseTask.class);
+
+    private static final AtomicIntegerFieldUpdater<PromiseTask> RUN_STATE =
+            AtomicIntegerFieldUpdater.newUpdater(PromiseTask.class, "runState");
+
+    private static final int NEW = 0;
+    private static final int RUNNING = 1;
+    private static final int INTERRUPTING = 2;
+    private static final int FINISHED = 3;
+
+    private static final byte CALLABLE = 0;
+    private static final byte RUNNABLE = 1;
+    private static final byte TRANSFORM = 2;
+
+    // Callable, Runnable or Transform, kept untyped so no adapter is needed
+    private final Object action;
+    // Transform input or Runnable result
+    private final Object input;
+    private final byte kind;
+    private volatile int runState = NEW;
+    private volatile Thread runner;
+
+
+    public PromiseTask(Callable<V> callable) {
+        this(callable, null, CALLABLE);
+    }
+
+    public PromiseTask(Runnable runnable, V value) {
+        this(runnable, value, RUNNABLE);
+    }
+
+    public <IN> PromiseTask(Transform<IN, V> transform, IN input) {
+        this(transform, input, TRANSFORM);
+    }
+
+    private PromiseTask(Object action, Object input, byte kind) {
+        if (action == null) {
+            throw new NullPointerException("action");
+        }
+        this.action = action;
+        this.input = input;
+        this.kind = kind;
+    }
+
+    @Override
+    public void run() {
+        if (!RUN_STATE.compareAndSet(this, NEW, RUNNING)) {
+            return;
+        }
+
+        runner = Thread.currentThread();
+        try {
+            OptionalLogger.trace(log, "Promise execution: {}", this);
+            V value = compute();
+            doResolve(value);
+        } catch (Throwable cause) {
+            doReject(cause);
+        } finally {
+            runner = null;
+            if (!RUN_STATE.compareAndSet(this, RUNNING, FINISHED)) {
+                // cancelled while running, do not leak the interrupt to the next pooled task
+                while (runState == INTERRUPTING) {
+                    Thread.yield();
+                }
+                Thread.interrupted();
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private V compute() throws Exception {
+        switch (kind) {
+            case CALLABLE:
+                return ((Callable<V>) action).call();
+            case TRANSFORM:
+                return ((Transform<Object, V>) action).transform(input);
+            default:
+                ((Runnable) action).run();
+                return (V) input;
+        }
+    }
+
+    @Override
+    void onAbort(boolean mayInterruptIfRunning) {
+        if (RUN_STATE.compareAndSet(this, NEW, FINISHED)) {
+            return;
+        }
+        if (mayInterruptIfRunning && RUN_STATE.compareAndSet(this, RUNNING, INTERRUPTING)) {
+            try {
+                Thread thread = runner;
+                if (thread != null) {
+                    thread.interrupt();
+                }
+            } finally {
+                runState = FINISHED;
+            }
+        }
+    }
+}
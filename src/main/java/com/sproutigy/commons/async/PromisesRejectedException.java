@@ -0,0 +1,22 @@
+package com.sproutigy.commons.async;
+
+import java.util.Collections;
+import java.util.List;
+
+public class PromisesRejectedException extends Exception {
+    private List<Object> causeObjects;
+
+    public PromisesRejectedException(List<Object> causeObjects) {
+        super("Promises rejected: " + causeObjects.size());
+        this.causeObjects = Collections.unmodifiableList(causeObjects);
+        for (Object causeObject : causeObjects) {
+            if (causeObject instanceof Throwable) {
+                addSuppressed((Throwable) causeObject);
+            }
+        }
+    }
+
+    public List<Object> getCauseObjects() {
+        return causeObjects;
+    }
+}
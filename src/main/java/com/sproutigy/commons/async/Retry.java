@@ -0,0 +1,262 @@
+package com.sproutigy.commons.async;
+
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Retries failed attempts with exponential backoff. Delays are scheduled on the Async scheduler,
+// so no thread is held while waiting for the next attempt.
+public class Retry {
+
+    private static Object log = OptionalLogger.getLogger(Retry.class);
+
+    public enum Jitter {
+        // exact exponential delays
+        None,
+        // random delay between 0 and the exponential one
+        Full,
+        // random delay between the initial one and three times the previous one
+        Decorrelated
+    }
+
+    public static final int DEFAULT_MAX_ATTEMPTS = 3;
+    public static final long DEFAULT_INITIAL_DELAY_MILLIS = 100;
+    public static final long DEFAULT_MAX_DELAY_MILLIS = 10000;
+    public static final double DEFAULT_MULTIPLIER = 2.0;
+
+    private int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+    private long initialDelayNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_INITIAL_DELAY_MILLIS);
+    private long maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_MAX_DELAY_MILLIS);
+    private double multiplier = DEFAULT_MULTIPLIER;
+    private Jitter jitter = Jitter.Full;
+    private Transform<Throwable, Boolean> retryOn;
+    private long deadlineNanos;
+
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong attempts = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong exhausted = new AtomicLong();
+
+
+    public Retry() {
+    }
+
+    public Retry(int maxAttempts) {
+        setMaxAttempts(maxAttempts);
+    }
+
+    // including the first attempt
+    public Retry setMaxAttempts(int maxAttempts) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("maxAttempts < 1");
+        }
+        this.maxAttempts = maxAttempts;
+        return this;
+    }
+
+    public Retry setBackoff(long initialDelay, long maxDelay, TimeUnit unit) {
+        if (initialDelay < 0 || maxDelay < initialDelay) {
+            throw new IllegalArgumentException("Backoff has to satisfy 0 <= initialDelay <= maxDelay");
+        }
+        this.initialDelayNanos = unit.toNanos(initialDelay);
+        this.maxDelayNanos = unit.toNanos(maxDelay);
+        return this;
+    }
+
+    public Retry setMultiplier(double multiplier) {
+        if (multiplier < 1) {
+            throw new IllegalArgumentException("multiplier < 1");
+        }
+        this.multiplier = multiplier;
+        return this;
+    }
+
+    public Retry setJitter(Jitter jitter) {
+        if (jitter == null) {
+            throw new NullPointerException("jitter");
+        }
+        this.jitter = jitter;
+        return this;
+    }
+
+    // decides whether a failure is worth retrying, all failures except cancellation are by default
+    public Retry setRetryOn(Transform<Throwable, Boolean> retryOn) {
+        this.retryOn = retryOn;
+        return this;
+    }
+
+    // overall time limit of a call including all attempts and delays, 0 for none
+    public Retry setDeadline(long timeout, TimeUnit unit) {
+        if (timeout < 0) {
+            throw new IllegalArgumentException("timeout < 0");
+        }
+        this.deadlineNanos = unit.toNanos(timeout);
+        return this;
+    }
+
+    public long getCalls() {
+        return calls.get();
+    }
+
+    public long getAttempts() {
+        return attempts.get();
+    }
+
+    public long getRetries() {
+        return retries.get();
+    }
+
+    // calls failed because of running out of attempts
+    public long getExhausted() {
+        return exhausted.get();
+    }
+
+    public <V> Promise<V> execute(final Callable<V> task) {
+        return submit(new Callable<Future<V>>() {
+            @Override
+            public Future<V> call() throws Exception {
+                return Promise.execute(task);
+            }
+        });
+    }
+
+    // attempt is called for every try, each call has to start an independent request
+    public <V> Promise<V> submit(Callable<? extends Future<V>> attempt) {
+        calls.incrementAndGet();
+        Execution<V> execution = new Execution<>(attempt);
+        execution.start();
+        return execution.deferred.getPromise();
+    }
+
+    private boolean isRetryable(Throwable cause) {
+        if (cause instanceof CancellationException) {
+            return false;
+        }
+        Transform<Throwable, Boolean> predicate = retryOn;
+        if (predicate == null) {
+            return true;
+        }
+        try {
+            return Boolean.TRUE.equals(predicate.transform(cause));
+        } catch (Throwable e) {
+            OptionalLogger.error(log, "Retry predicate {} error", predicate, e);
+            return false;
+        }
+    }
+
+
+    private final class Execution<V> implements Runnable {
+        final Deferred<V> deferred = Promise.defer();
+        final Callable<? extends Future<V>> attempt;
+        final long deadline;
+        // attempts run one after another, so these are only touched by one thread at a time
+        int attemptCount;
+        long previousDelay = initialDelayNanos;
+        volatile Promise<V> current;
+        volatile ScheduledFuture<?> timer;
+
+        Execution(Callable<? extends Future<V>> attempt) {
+            this.attempt = attempt;
+            this.deadline = deadlineNanos > 0 ? System.nanoTime() + deadlineNanos : 0;
+        }
+
+        void start() {
+            Promise<V> promise = deferred.getPromise();
+            promise.addCanceller(new Callback<Boolean>() {
+                @Override
+                public void onCallback(Boolean mayInterruptIfRunning) throws Exception {
+                    ScheduledFuture<?> pending = timer;
+                    if (pending != null) {
+                        pending.cancel(false);
+                    }
+                    Promise<V> running = current;
+                    if (running != null) {
+                        running.cancel(mayInterruptIfRunning);
+                    }
+                }
+            });
+            if (deadline != 0) {
+                promise.timeout(deadlineNanos, TimeUnit.NANOSECONDS);
+            }
+            run();
+        }
+
+        @Override
+        public void run() {
+            if (deferred.getPromise().isDone()) {
+                return;
+            }
+
+            attemptCount++;
+            attempts.incrementAndGet();
+
+            Promise<V> promise;
+            try {
+                promise = Promise.from(attempt.call());
+            } catch (Throwable e) {
+                promise = Promise.reject(e);
+            }
+            current = promise;
+
+            promise.onDone(new Callback<V>() {
+                @Override
+                public void onCallback(V value) throws Exception {
+                    deferred.resolve(value);
+                }
+            }, new Callback<Throwable>() {
+                @Override
+                public void onCallback(Throwable cause) throws Exception {
+                    failed(cause);
+                }
+            });
+        }
+
+        private void failed(Throwable cause) {
+            if (deferred.getPromise().isDone()) {
+                return;
+            }
+
+            if (!isRetryable(cause)) {
+                deferred.reject(cause);
+                return;
+            }
+            if (attemptCount >= maxAttempts) {
+                exhausted.incrementAndGet();
+                deferred.reject(cause);
+                return;
+            }
+
+            long delay = nextDelay();
+            if (deadline != 0 && System.nanoTime() + delay - deadline >= 0) {
+                // next attempt would start too late, fail with the real cause instead of timing out
+                deferred.reject(cause);
+                return;
+            }
+
+            retries.incrementAndGet();
+            OptionalLogger.debug(log, "Attempt {} failed, retrying in {} ns", attemptCount, delay, cause);
+            timer = Async.schedule(this, delay, TimeUnit.NANOSECONDS);
+        }
+
+        private long nextDelay() {
+            long delay;
+            if (jitter == Jitter.Decorrelated) {
+                long upper = Math.min(maxDelayNanos, previousDelay * 3);
+                delay = upper > initialDelayNanos ? ThreadLocalRandom.current().nextLong(initialDelayNanos, upper + 1) : initialDelayNanos;
+            } else {
+                double exponential = initialDelayNanos * Math.pow(multiplier, attemptCount - 1);
+                delay = (long) Math.min(maxDelayNanos, exponential);
+                if (jitter == Jitter.Full && delay > 0) {
+                    delay = ThreadLocalRandom.current().nextLong(delay + 1);
+                }
+            }
+            previousDelay = Math.max(delay, initialDelayNanos);
+            return delay;
+        }
+    }
+}
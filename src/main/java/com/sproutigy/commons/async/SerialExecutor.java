@@ -0,0 +1,163 @@
+package com.sproutigy.commons.async;
+
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+// Runs submitted tasks one at a time in submission order on top of another executor, like an actor mailbox.
+// Producers append to a lock-free multi-producer single-consumer queue and the one that finds the executor idle
+// schedules the drain. At most batchLimit tasks run per drain, then the executor yields its thread
+// and reschedules itself, so a busy queue does not monopolise a pool thread.
+public class SerialExecutor implements Executor, Runnable {
+
+    private static Object log = OptionalLogger.getLogger(SerialExecutor.class);
+
+    public static final int DEFAULT_BATCH_LIMIT = 64;
+
+    private static final AtomicReferenceFieldUpdater<SerialExecutor, Node> TAIL =
+            AtomicReferenceFieldUpdater.newUpdater(SerialExecutor.class, Node.class, "tail");
+    private static final AtomicIntegerFieldUpdater<SerialExecutor> STATE =
+            AtomicIntegerFieldUpdater.newUpdater(SerialExecutor.class, "state");
+    private static final AtomicIntegerFieldUpdater<SerialExecutor> SIZE =
+            AtomicIntegerFieldUpdater.newUpdater(SerialExecutor.class, "size");
+    private static final AtomicIntegerFieldUpdater<SerialExecutor> MAX_SIZE =
+            AtomicIntegerFieldUpdater.newUpdater(SerialExecutor.class, "maxSize");
+
+    private static final int IDLE = 0;
+    private static final int SCHEDULED = 1;
+
+    private final Executor executor;
+    private final int batchLimit;
+
+    // consumer end, only touched by the draining thread, head itself is an already consumed node
+    private Node head;
+    // producer end, swapped by producers
+    private volatile Node tail;
+    private volatile int state = IDLE;
+
+    private volatile int size;
+    private volatile int maxSize;
+    // written by the draining thread only
+    private volatile long executed;
+    private volatile long yields;
+
+
+    private static final class Node {
+        Runnable task;
+        volatile Node next;
+
+        Node(Runnable task) {
+            this.task = task;
+        }
+    }
+
+    public SerialExecutor(Executor executor) {
+        this(executor, DEFAULT_BATCH_LIMIT);
+    }
+
+    public SerialExecutor(Executor executor, int batchLimit) {
+        if (executor == null) {
+            throw new NullPointerException("executor");
+        }
+        if (batchLimit < 1) {
+            throw new IllegalArgumentException("batchLimit < 1");
+        }
+        this.executor = executor;
+        this.batchLimit = batchLimit;
+        this.head = new Node(null);
+        this.tail = head;
+    }
+
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    public int getBatchLimit() {
+        return batchLimit;
+    }
+
+    // tasks waiting, including the ones of a batch being drained
+    public int getQueueSize() {
+        return size;
+    }
+
+    public int getMaxQueueSize() {
+        return maxSize;
+    }
+
+    public long getExecutedCount() {
+        return executed;
+    }
+
+    // how many times draining has been interrupted by the batch limit
+    public long getYieldCount() {
+        return yields;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        if (command == null) {
+            throw new NullPointerException("command");
+        }
+
+        int queued = SIZE.incrementAndGet(this);
+        int max;
+        while (queued > (max = maxSize) && !MAX_SIZE.compareAndSet(this, max, queued)) {
+        }
+
+        Node node = new Node(command);
+        TAIL.getAndSet(this, node).next = node;
+
+        if (state == IDLE && STATE.compareAndSet(this, IDLE, SCHEDULED)) {
+            schedule();
+        }
+    }
+
+    @Override
+    public void run() {
+        int count = 0;
+        Node next;
+        while (count < batchLimit && (next = head.next) != null) {
+            Runnable task = next.task;
+            next.task = null;
+            head = next;
+            SIZE.decrementAndGet(this);
+            count++;
+            try {
+                task.run();
+            } catch (Throwable e) {
+                OptionalLogger.error(log, "Execution of serial task {} failed", task, e);
+            }
+            afterExecute(task);
+        }
+        executed += count;
+
+        if (count == batchLimit && head.next != null) {
+            // give other work a chance, stay scheduled
+            yields++;
+            schedule();
+            return;
+        }
+
+        state = IDLE;
+        // a producer that has found the executor still scheduled relies on this check
+        if (head.next != null && STATE.compareAndSet(this, IDLE, SCHEDULED)) {
+            schedule();
+        }
+    }
+
+    // called on the draining thread after each task, also when it has thrown
+    protected void afterExecute(Runnable task) {
+    }
+
+    private void schedule() {
+        try {
+            executor.execute(this);
+        } catch (RuntimeException e) {
+            // queued tasks wait for the next successful submission
+            state = IDLE;
+            throw e;
+        }
+    }
+}
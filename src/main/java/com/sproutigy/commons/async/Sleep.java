@@ -1,15 +1,19 @@
 package com.sproutigy.commons.async;
 
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
 
 public final class Sleep {
 
     private Sleep() {
     }
 
+    // parking wakes up late by up to tens of microseconds, so the end of a precise sleep is spun
+    private static final long PRECISE_SPIN_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
     public static void interruptable(long duration, TimeUnit timeUnit) throws InterruptedException {
-        interruptable(10, TimeUnit.SECONDS);
-        interruptable(timeUnit.toMillis(duration));
+        long nanos = timeUnit.toNanos(duration);
+        interruptable(nanos / 1000000, (int) (nanos % 1000000));
     }
 
     public static void interruptable(long millis) throws InterruptedException {
@@ -21,7 +25,8 @@ public final class Sleep {
     }
 
     public static void unchecked(long duration, TimeUnit timeUnit) {
-        unchecked(timeUnit.toMillis(duration));
+        long nanos = timeUnit.toNanos(duration);
+        unchecked(nanos / 1000000, (int) (nanos % 1000000));
     }
 
     public static void unchecked(long millis) {
@@ -50,6 +55,40 @@ public final class Sleep {
     }
 
     public static boolean untilInterrupted(long duration, TimeUnit timeUnit) {
-        return untilInterrupted(timeUnit.toMillis(duration));
+        long nanos = timeUnit.toNanos(duration);
+        return untilInterrupted(nanos / 1000000, (int) (nanos % 1000000));
+    }
+
+    // fulfilled after given time without holding any thread meanwhile, cancellable
+    public static Promise<Void> async(long millis) {
+        return async(millis, TimeUnit.MILLISECONDS);
+    }
+
+    public static Promise<Void> async(long duration, TimeUnit timeUnit) {
+        return Promise.delay(null, duration, timeUnit);
+    }
+
+    // sub-millisecond precision at the cost of spinning the last PRECISE_SPIN_NANOS
+    public static void precise(long duration, TimeUnit timeUnit) throws InterruptedException {
+        preciseUntil(System.nanoTime() + timeUnit.toNanos(duration));
+    }
+
+    // sleeps until System.nanoTime() reaches the deadline, rate-controlled loops advance the deadline
+    // by their period instead of sleeping the period, so they do not drift
+    public static void preciseUntil(long deadlineNanoTime) throws InterruptedException {
+        while (true) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            long left = deadlineNanoTime - System.nanoTime();
+            if (left <= 0) {
+                return;
+            }
+            if (left > PRECISE_SPIN_NANOS) {
+                LockSupport.parkNanos(left - PRECISE_SPIN_NANOS);
+            } else {
+                SpinWait.onSpinWait();
+            }
+        }
     }
-}
\ No newline at end of file
+}
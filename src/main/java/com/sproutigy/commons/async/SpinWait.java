@@ -0,0 +1,32 @@
+package com.sproutigy.commons.async;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+final class SpinWait {
+    private SpinWait() {
+    }
+
+    static final boolean MULTIPROCESSOR = Runtime.getRuntime().availableProcessors() > 1;
+
+    // Thread.onSpinWait() is available since Java 9
+    private static final MethodHandle ON_SPIN_WAIT = findOnSpinWait();
+
+    private static MethodHandle findOnSpinWait() {
+        try {
+            return MethodHandles.publicLookup().findStatic(Thread.class, "onSpinWait", MethodType.methodType(void.class));
+        } catch (NoSuchMethodException | IllegalAccessException ignore) {
+            return null;
+        }
+    }
+
+    static void onSpinWait() {
+        if (ON_SPIN_WAIT != null) {
+            try {
+                ON_SPIN_WAIT.invokeExact();
+            } catch (Throwable ignore) {
+            }
+        }
+    }
+}
@@ -2,11 +2,12 @@ package com.sproutigy.commons.async;
 
 import org.junit.Test;
 
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
-import static org.junit.Assert.assertFalse;
-import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.*;
 
 /**
  * @author LukeAheadNET
@@ -27,4 +28,32 @@ public class AsyncTest {
         assertTrue(ab1.get());
         assertTrue(ab2.get());
     }
+
+    @Test(expected = IllegalStateException.class)
+    public void testConfigureAfterFirstUse() {
+        Async.getService();
+        assertTrue(Async.isConfigured());
+        Async.useWorkStealingExecutor(2);
+    }
+
+    @Test
+    public void testAwaitOnSingleWorkerPool() throws Exception {
+        ForkJoinPool pool = new ForkJoinPool(1, ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+        try {
+            final Deferred<String> deferred = Promise.defer();
+            Future<String> awaiting = pool.submit(() -> {
+                pool.execute(() -> deferred.resolve("done"));
+                return deferred.getPromise().get();
+            });
+            assertEquals("done", awaiting.get(5, TimeUnit.SECONDS));
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testVirtualThreadsSupport() {
+        boolean hasVirtualThreads = FutureWatch.isClassAvailable("java.lang.Thread$Builder$OfVirtual");
+        assertEquals(hasVirtualThreads, Async.isVirtualThreadsSupported());
+    }
 }
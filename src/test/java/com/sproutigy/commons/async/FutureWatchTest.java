@@ -0,0 +1,167 @@
+package com.sproutigy.commons.async;
+
+import com.google.common.util.concurrent.SettableFuture;
+import io.netty.util.concurrent.DefaultPromise;
+import io.netty.util.concurrent.ImmediateEventExecutor;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class FutureWatchTest {
+
+    private static FutureTask<Integer> task(int value) {
+        return new FutureTask<>(() -> value);
+    }
+
+    @Test
+    public void testListenDoesNotBlockCaller() throws Exception {
+        FutureTask<Integer> future = task(1);
+        CountDownLatch latch = new CountDownLatch(1);
+
+        long start = System.nanoTime();
+        FutureWatch.listen(future, (result, value, cause) -> latch.countDown());
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(20));
+
+        future.run();
+        assertTrue(latch.await(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testManyPendingFutures() throws Exception {
+        final int count = 10000;
+        List<FutureTask<Integer>> futures = new ArrayList<>(count);
+        CountDownLatch latch = new CountDownLatch(count);
+        AtomicInteger sum = new AtomicInteger();
+
+        for (int i = 0; i < count; i++) {
+            FutureTask<Integer> future = task(1);
+            futures.add(future);
+            FutureWatch.listen(future, (result, value, cause) -> {
+                if (result.isSuccess()) {
+                    sum.addAndGet(value);
+                }
+                latch.countDown();
+            });
+        }
+
+        for (FutureTask<Integer> future : futures) {
+            future.run();
+        }
+
+        assertTrue(latch.await(2, TimeUnit.SECONDS));
+        assertEquals(count, sum.get());
+    }
+
+    @Test
+    public void testUnlisten() throws Exception {
+        FutureTask<Integer> future = task(1);
+        AtomicInteger called = new AtomicInteger();
+        ExecutionCallback<Integer> callback = (result, value, cause) -> called.incrementAndGet();
+
+        FutureWatch.listen(future, callback);
+        FutureWatch.unlisten(future, callback);
+        future.run();
+
+        Sleep.unchecked(100);
+        assertEquals(0, called.get());
+    }
+
+    @Test
+    public void testDuplicateListen() throws Exception {
+        FutureTask<Integer> unlistened = task(1);
+        Deferred<Integer> deferred = Promise.defer();
+        AtomicInteger called = new AtomicInteger();
+        ExecutionCallback<Integer> callback = (result, value, cause) -> called.incrementAndGet();
+
+        // duplicates share one registration, a single unlisten removes it
+        FutureWatch.listen(unlistened, callback);
+        FutureWatch.listen(unlistened, callback);
+        FutureWatch.unlisten(unlistened, callback);
+        FutureWatch.listen(deferred.getPromise(), callback);
+        FutureWatch.listen(deferred.getPromise(), callback);
+        FutureWatch.unlisten(deferred.getPromise(), callback);
+        unlistened.run();
+        deferred.resolve(1);
+        Sleep.unchecked(100);
+        assertEquals(0, called.get());
+
+        FutureTask<Integer> future = task(1);
+        FutureWatch.listen(future, callback);
+        FutureWatch.listen(future, callback);
+        future.run();
+        Sleep.unchecked(100);
+        assertEquals(1, called.get());
+    }
+
+    @Test
+    public void testCancelledFuture() throws Exception {
+        FutureTask<Integer> future = task(1);
+        CountDownLatch latch = new CountDownLatch(1);
+        FutureWatch.listen(future, (result, value, cause) -> {
+            if (result.isCancelled()) {
+                latch.countDown();
+            }
+        });
+        future.cancel(false);
+        assertTrue(latch.await(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testUnlistenPromise() throws Exception {
+        Deferred<Integer> deferred = Promise.defer();
+        AtomicInteger called = new AtomicInteger();
+        CountDownLatch other = new CountDownLatch(1);
+        ExecutionCallback<Integer> callback = (result, value, cause) -> called.incrementAndGet();
+
+        FutureWatch.listen(deferred.getPromise(), callback);
+        FutureWatch.listen(deferred.getPromise(), (result, value, cause) -> other.countDown());
+        FutureWatch.unlisten(deferred.getPromise(), callback);
+        deferred.resolve(1);
+
+        assertTrue(other.await(1, TimeUnit.SECONDS));
+        Sleep.unchecked(50);
+        assertEquals(0, called.get());
+    }
+
+    @Test
+    public void testCompletionStageCallbackOnCompletingThread() throws Exception {
+        CompletableFuture<Integer> future = new CompletableFuture<>();
+        AtomicReference<Thread> thread = new AtomicReference<>();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        FutureWatch.listen(future, (result, value, cause) -> thread.set(Thread.currentThread()));
+        future.complete(1);
+        assertSame(Thread.currentThread(), thread.get());
+
+        CompletableFuture<Integer> failing = new CompletableFuture<>();
+        FutureWatch.listen(failing, (result, value, cause) -> failure.set(cause));
+        failing.completeExceptionally(new IllegalStateException());
+        assertTrue(failure.get() instanceof IllegalStateException);
+    }
+
+    @Test
+    public void testListenableFuture() throws Exception {
+        SettableFuture<Integer> future = SettableFuture.create();
+        AtomicInteger received = new AtomicInteger();
+        FutureWatch.listen(future, (result, value, cause) -> received.set(value));
+        future.set(7);
+        assertEquals(7, received.get());
+    }
+
+    @Test
+    public void testNettyFuture() throws Exception {
+        DefaultPromise<Integer> future = new DefaultPromise<>(ImmediateEventExecutor.INSTANCE);
+        AtomicInteger received = new AtomicInteger();
+        FutureWatch.listen(future, (result, value, cause) -> received.set(value));
+        future.setSuccess(9);
+        assertEquals(9, received.get());
+    }
+}
@@ -0,0 +1,72 @@
+package com.sproutigy.commons.async;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class HashedWheelSchedulerTest {
+
+    private HashedWheelScheduler scheduler;
+
+    @Before
+    public void setUp() {
+        scheduler = new HashedWheelScheduler(1, TimeUnit.MILLISECONDS, 64, Executors.newSingleThreadExecutor());
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void testSchedule() throws Exception {
+        AtomicBoolean ab1 = new AtomicBoolean(false);
+        AtomicBoolean ab2 = new AtomicBoolean(false);
+        scheduler.schedule(() -> ab1.set(true), 50, TimeUnit.MILLISECONDS);
+        ScheduledFuture<?> second = scheduler.schedule(() -> ab2.set(true), 300, TimeUnit.MILLISECONDS);
+        Sleep.unchecked(150);
+        assertTrue(ab1.get());
+        assertFalse(ab2.get());
+        second.get(1, TimeUnit.SECONDS);
+        assertTrue(ab2.get());
+        assertEquals(0, scheduler.getPendingCount());
+    }
+
+    @Test
+    public void testDelayLongerThanWheelRound() throws Exception {
+        long start = System.nanoTime();
+        scheduler.schedule(() -> { }, 200, TimeUnit.MILLISECONDS).get(1, TimeUnit.SECONDS);
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(200));
+    }
+
+    @Test
+    public void testCancel() throws Exception {
+        AtomicInteger fired = new AtomicInteger();
+        for (int i = 0; i < 1000; i++) {
+            ScheduledFuture<?> future = scheduler.schedule(fired::incrementAndGet, 20 + i % 50, TimeUnit.MILLISECONDS);
+            assertTrue(future.cancel(false));
+            assertTrue(future.isCancelled());
+        }
+        Sleep.unchecked(200);
+        assertEquals(0, fired.get());
+        assertEquals(0, scheduler.getPendingCount());
+    }
+
+    @Test
+    public void testScheduleAtFixedRate() throws Exception {
+        CountDownLatch latch = new CountDownLatch(5);
+        ScheduledFuture<?> future = scheduler.scheduleAtFixedRate(latch::countDown, 10, 10, TimeUnit.MILLISECONDS);
+        assertTrue(latch.await(1, TimeUnit.SECONDS));
+        assertTrue(future.cancel(false));
+        assertTrue(future.isDone());
+    }
+}
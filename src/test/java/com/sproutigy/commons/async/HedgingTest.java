@@ -0,0 +1,84 @@
+package com.sproutigy.commons.async;
+
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class HedgingTest {
+
+    @Test
+    public void testBackupWinsAndPrimaryIsCancelled() throws Exception {
+        Hedging hedging = new Hedging(20, TimeUnit.MILLISECONDS).setMaxHedgeRate(1.0);
+        AtomicInteger attempts = new AtomicInteger();
+        Deferred<String> slowPrimary = Promise.defer();
+
+        Promise<String> result = hedging.submit(() -> {
+            if (attempts.incrementAndGet() == 1) {
+                return slowPrimary.getPromise();
+            }
+            return Promise.resolve("backup");
+        });
+
+        assertFalse(result.isDone());
+        assertEquals("backup", result.get(1, TimeUnit.SECONDS));
+        assertEquals(2, attempts.get());
+        assertEquals(1, hedging.getHedges());
+        slowPrimary.getPromise().awaitUnterruptibly();
+        assertTrue(slowPrimary.getPromise().isCancelled());
+    }
+
+    @Test
+    public void testFastPrimaryIsNotHedged() throws Exception {
+        Hedging hedging = new Hedging(200, TimeUnit.MILLISECONDS);
+        AtomicInteger attempts = new AtomicInteger();
+
+        Promise<Integer> result = hedging.execute(attempts::incrementAndGet);
+        assertEquals(1, (int) result.get(1, TimeUnit.SECONDS));
+        Sleep.unchecked(300);
+        assertEquals(1, attempts.get());
+        assertEquals(0, hedging.getHedges());
+    }
+
+    @Test
+    public void testHedgeBudget() throws Exception {
+        Hedging hedging = new Hedging(1, TimeUnit.MILLISECONDS).setMaxHedgeRate(0);
+        AtomicInteger attempts = new AtomicInteger();
+        Callable<Future<String>> slow = () -> {
+            attempts.incrementAndGet();
+            return Promise.execute(() -> {
+                Sleep.unchecked(20);
+                return "slow";
+            });
+        };
+
+        for (int i = 0; i < 15; i++) {
+            assertEquals("slow", hedging.submit(slow).get(1, TimeUnit.SECONDS));
+        }
+        // no budget earned, not even on a cold start
+        assertEquals(0, hedging.getHedges());
+        assertEquals(15, attempts.get());
+
+        hedging.setMaxHedgeRate(0.5);
+        for (int i = 0; i < 15; i++) {
+            assertEquals("slow", hedging.submit(slow).get(1, TimeUnit.SECONDS));
+        }
+        // every second call earns a hedge
+        assertEquals(7, hedging.getHedges());
+        assertEquals(37, attempts.get());
+    }
+
+    @Test
+    public void testAllAttemptsFailed() throws Exception {
+        Hedging hedging = new Hedging(1, TimeUnit.MILLISECONDS);
+        Promise<String> result = hedging.submit(() -> Promise.execute(() -> {
+            Sleep.unchecked(20);
+            throw new IllegalStateException("failed");
+        }));
+        assertTrue(result.awaitUnterruptibly().getCause() instanceof IllegalStateException);
+    }
+}
@@ -0,0 +1,100 @@
+package com.sproutigy.commons.async;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.junit.Assert.*;
+
+public class KeyedExecutorTest {
+
+    @Test
+    public void testOrderedPerKey() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            checkOrderedPerKey(new KeyedExecutor(pool), pool);
+            checkOrderedPerKey(new KeyedExecutor(pool, 8), pool);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private void checkOrderedPerKey(final KeyedExecutor keyed, ExecutorService producers) throws Exception {
+        final int keys = 16;
+        final int tasks = 2000;
+        final AtomicIntegerArray next = new AtomicIntegerArray(keys);
+        final AtomicIntegerArray active = new AtomicIntegerArray(keys);
+        final AtomicBoolean failed = new AtomicBoolean();
+        final CountDownLatch done = new CountDownLatch(keys * tasks);
+
+        for (int k = 0; k < keys; k++) {
+            final Integer key = k;
+            producers.execute(() -> {
+                for (int i = 0; i < tasks; i++) {
+                    final int sequence = i;
+                    keyed.execute(key, () -> {
+                        if (active.incrementAndGet(key) != 1 || next.getAndIncrement(key) != sequence) {
+                            failed.set(true);
+                        }
+                        active.decrementAndGet(key);
+                        done.countDown();
+                    });
+                }
+            });
+        }
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertFalse(failed.get());
+    }
+
+    @Test
+    public void testKeysRunInParallel() throws Exception {
+        KeyedExecutor keyed = new KeyedExecutor();
+        final CountDownLatch both = new CountDownLatch(2);
+        Promise<Boolean> first = keyed.submit("a", () -> {
+            both.countDown();
+            return both.await(1, TimeUnit.SECONDS);
+        });
+        Promise<Boolean> second = keyed.submit("b", () -> {
+            both.countDown();
+            return both.await(1, TimeUnit.SECONDS);
+        });
+        assertTrue(first.get(2, TimeUnit.SECONDS));
+        assertTrue(second.get(2, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testIdleKeysRemoved() throws Exception {
+        KeyedExecutor keyed = new KeyedExecutor();
+        final CountDownLatch release = new CountDownLatch(1);
+        Promise<?> blocked = keyed.submit("blocked", () -> {
+            release.await();
+            return null;
+        });
+        Promise<String> queued = keyed.submit("blocked", () -> "after");
+        for (int i = 0; i < 100; i++) {
+            keyed.submit(i, () -> { }).await();
+        }
+
+        // promise settles just before its key queue is released
+        awaitKeyCount(keyed, 1);
+        assertEquals(1, keyed.getQueueSize("blocked"));
+        release.countDown();
+        assertEquals("after", queued.get(1, TimeUnit.SECONDS));
+        assertTrue(blocked.isDone());
+        awaitKeyCount(keyed, 0);
+    }
+
+    private static void awaitKeyCount(KeyedExecutor keyed, int expected) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+        while (keyed.getKeyCount() != expected && System.nanoTime() < deadline) {
+            Sleep.unchecked(1);
+        }
+        assertEquals(expected, keyed.getKeyCount());
+    }
+}
@@ -0,0 +1,68 @@
+package com.sproutigy.commons.async;
+
+import org.junit.Test;
+import org.openjdk.jol.info.ClassLayout;
+import org.openjdk.jol.info.GraphLayout;
+import org.openjdk.jol.vm.VM;
+
+import java.util.HashSet;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+public class PromiseFootprintTest {
+
+    private static final Callback<String> NOOP = new Callback<String>() {
+        @Override
+        public void onCallback(String value) throws Exception {
+        }
+    };
+
+    @Test
+    public void testPendingPromise() {
+        Promise<String> promise = Promise.<String>defer().getPromise();
+        // label may have been created by trace logging already, make it deterministic
+        promise.toString();
+
+        GraphLayout graph = GraphLayout.parseInstance(promise);
+        assertEquals(graph.toFootprint(), 2, graph.totalCount());
+        assertEquals(classes(Promise.class, "Promise$Label"), graph.getClasses());
+    }
+
+    @Test
+    public void testSingleHandlerStoredInline() {
+        Promise<String> promise = Promise.<String>defer().getPromise();
+        promise.toString();
+        promise.onDone(NOOP, null);
+
+        // no list nor queue, just the handler node referencing the callback
+        GraphLayout graph = GraphLayout.parseInstance(promise);
+        assertEquals(graph.toFootprint(), 4, graph.totalCount());
+        assertEquals(classes(Promise.class, "Promise$Label", "Promise$Handler", NOOP.getClass().getName()), graph.getClasses());
+    }
+
+    @Test
+    public void testInstanceSize() {
+        // sizes below hold for compressed references and 12 byte headers, the default of 64-bit HotSpot
+        assumeTrue(VM.current().sizeOfField("java.lang.Object") == 4 && VM.current().objectHeaderSize() == 12);
+        assertTrue(ClassLayout.parseClass(Promise.class).toPrintable(), ClassLayout.parseClass(Promise.class).instanceSize() <= 48);
+        assertTrue(ClassLayout.parseClass(PromiseTask.class).toPrintable(), ClassLayout.parseClass(PromiseTask.class).instanceSize() <= 64);
+    }
+
+    private static HashSet<Class<?>> classes(Object... types) {
+        HashSet<Class<?>> classes = new HashSet<>();
+        for (Object type : types) {
+            if (type instanceof Class) {
+                classes.add((Class<?>) type);
+            } else {
+                String name = (String) type;
+                try {
+                    classes.add(Class.forName(name.contains(".") ? name : Promise.class.getPackage().getName() + "." + name));
+                } catch (ClassNotFoundException e) {
+                    throw new AssertionError(e);
+                }
+            }
+        }
+        return classes;
+    }
+}
@@ -1,9 +1,23 @@
 package com.sproutigy.commons.async;
 
 import org.junit.Test;
+import org.openjdk.jol.info.GraphLayout;
 
+import java.lang.reflect.Modifier;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.junit.Assert.*;
 
@@ -58,6 +72,216 @@ public class PromiseTest {
         p3.await();
     }
 
+    @Test
+    public void testTypedAll() throws Exception {
+        Deferred<Integer> slow = Promise.defer();
+        Promise<List<Integer>> all = Promise.all(Arrays.asList(slow.getPromise(), Promise.resolve(2), Promise.execute(() -> 3)));
+        assertFalse(all.isDone());
+        slow.resolve(1);
+        assertEquals(Arrays.asList(1, 2, 3), all.get(1, TimeUnit.SECONDS));
+
+        assertTrue(Promise.all(new ArrayList<Promise<String>>()).get().isEmpty());
+    }
+
+    @Test
+    public void testTypedAllFailFast() throws Exception {
+        Deferred<String> pending = Promise.defer();
+        Deferred<String> failing = Promise.defer();
+        Promise<List<String>> all = Promise.all(Arrays.asList(pending.getPromise(), failing.getPromise()), true);
+
+        failing.reject(new IllegalStateException("failed"));
+        assertTrue(all.isRejected());
+        assertTrue(all.getCause() instanceof IllegalStateException);
+        assertTrue(pending.getPromise().isCancelled());
+    }
+
+    @Test
+    public void testAllSettled() throws Exception {
+        Deferred<String> failing = Promise.defer();
+        Promise<List<Promise<String>>> all = Promise.allSettled(Arrays.asList(Promise.resolve("ok"), failing.getPromise()));
+        assertFalse(all.isDone());
+        failing.reject(new IllegalStateException());
+
+        List<Promise<String>> outcomes = all.get(1, TimeUnit.SECONDS);
+        assertEquals("ok", outcomes.get(0).getValue());
+        assertTrue(outcomes.get(1).isRejected());
+    }
+
+    @Test
+    public void testAnyCancelsLosers() throws Exception {
+        Deferred<String> failing = Promise.defer();
+        Deferred<String> winning = Promise.defer();
+        Deferred<String> losing = Promise.defer();
+        Promise<String> any = Promise.any(Arrays.asList(failing.getPromise(), winning.getPromise(), losing.getPromise()));
+
+        failing.reject(new IllegalStateException());
+        assertFalse(any.isDone());
+        winning.resolve("winner");
+        assertEquals("winner", any.get(1, TimeUnit.SECONDS));
+        assertTrue(losing.getPromise().isCancelled());
+
+        Promise<String> none = Promise.any(Arrays.asList(Promise.<String>reject(new IllegalStateException("1")), Promise.<String>reject(new IllegalStateException("2"))));
+        Throwable cause = none.awaitUnterruptibly().getCause();
+        assertTrue(cause instanceof PromisesRejectedException);
+        assertEquals(2, ((PromisesRejectedException) cause).getCauseObjects().size());
+    }
+
+    @Test
+    public void testSomeQuorum() throws Exception {
+        List<Deferred<Integer>> replicas = new ArrayList<>();
+        List<Promise<Integer>> promises = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Deferred<Integer> replica = Promise.defer();
+            replicas.add(replica);
+            promises.add(replica.getPromise());
+        }
+
+        Promise<List<Integer>> quorum = Promise.some(2, promises);
+        replicas.get(2).resolve(3);
+        replicas.get(0).resolve(1);
+        assertEquals(Arrays.asList(3, 1), quorum.get(1, TimeUnit.SECONDS));
+        assertTrue(replicas.get(1).getPromise().isCancelled());
+
+        Promise<List<Integer>> unreachable = Promise.some(2, Arrays.asList(Promise.resolve(1), Promise.<Integer>reject(new IllegalStateException()), Promise.<Integer>reject(new IllegalStateException())));
+        assertTrue(unreachable.awaitUnterruptibly().isRejected());
+
+        // deciding the failure must not wait for inputs still pending
+        Deferred<Integer> pending = Promise.defer();
+        Promise<List<Integer>> failed = Promise.some(2, Arrays.asList(Promise.<Integer>reject(new IllegalStateException()), pending.getPromise(), Promise.<Integer>reject(new IllegalStateException())));
+        assertTrue(failed.await(1, TimeUnit.SECONDS).isRejected());
+        assertEquals(2, ((PromisesRejectedException) failed.getCause()).getCauseObjects().size());
+    }
+
+    @Test
+    public void testLazy() throws Exception {
+        AtomicInteger computed = new AtomicInteger();
+        Promise<Integer> lazy = Promise.lazy(computed::incrementAndGet);
+
+        Promise<Integer> doubled = lazy.then(value -> value * 2);
+        Promise<List<Integer>> all = Promise.all(Arrays.asList(lazy, doubled));
+        Sleep.unchecked(50);
+        assertEquals(0, computed.get());
+        assertFalse(lazy.isDone());
+
+        assertEquals(Arrays.asList(1, 2), all.get(1, TimeUnit.SECONDS));
+        assertEquals(1, (int) lazy.get());
+        assertEquals(1, computed.get());
+    }
+
+    @Test
+    public void testLazyStartedOnce() throws Exception {
+        AtomicInteger computed = new AtomicInteger();
+        Promise<Integer> lazy = Promise.lazy(computed::incrementAndGet);
+
+        AtomicInteger derived = new AtomicInteger();
+        Promise<Integer> chained = lazy.then(value -> derived.addAndGet(value + 1));
+        Promise<Integer> cancelled = lazy.then(value -> derived.addAndGet(100));
+        assertTrue(cancelled.cancel(false));
+        assertFalse(lazy.isCancelled());
+
+        CountDownLatch subscribed = new CountDownLatch(10);
+        for (int i = 0; i < 10; i++) {
+            new Thread(() -> lazy.onFulfill(value -> subscribed.countDown())).start();
+        }
+        assertTrue(subscribed.await(1, TimeUnit.SECONDS));
+        assertEquals(1, computed.get());
+
+        // chained before the start is not consumed itself, still it follows the started source
+        long deadline = System.currentTimeMillis() + 1000;
+        while (!chained.isDone() && System.currentTimeMillis() < deadline) {
+            Sleep.unchecked(1);
+        }
+        assertTrue(chained.isDone());
+        assertEquals(2, derived.get());
+        assertEquals(2, (int) chained.get());
+    }
+
+    @Test
+    public void testTimeoutDoesNotStartLazy() throws Exception {
+        AtomicInteger computed = new AtomicInteger();
+        Promise<Integer> lazy = Promise.lazy(computed::incrementAndGet).timeout(1, TimeUnit.SECONDS);
+        Sleep.unchecked(50);
+        assertEquals(0, computed.get());
+        assertFalse(lazy.isDone());
+
+        assertEquals(1, (int) lazy.get(1, TimeUnit.SECONDS));
+        assertEquals(1, computed.get());
+
+        // timeout counts from the start, not from the timeout() call
+        Deferred<String> work = Promise.defer();
+        Promise<String> slow = Promise.lazy(() -> work.getPromise().get()).timeout(50, TimeUnit.MILLISECONDS);
+        Sleep.unchecked(100);
+        assertFalse(slow.isDone());
+        slow.onFulfill(value -> {
+        });
+        Sleep.unchecked(100);
+        assertTrue(slow.getCause() instanceof TimeoutException);
+        work.resolve("late");
+    }
+
+    @Test
+    public void testCompletedPromises() throws Exception {
+        assertSame(Promise.resolve(null), Promise.resolve());
+        assertSame(Promise.resolve(true), Promise.resolve(Boolean.TRUE));
+        assertTrue(Promise.resolve(false).isDone());
+        assertFalse(Promise.resolve(false).get());
+
+        Promise<Boolean> named = Promise.resolve(true).setName("named");
+        assertNotSame(Promise.resolve(true), named);
+        assertEquals("named", named.getName());
+        assertNull(Promise.resolve(true).getName());
+        assertFalse(Promise.resolve(true).isSynchronous());
+
+        Promise<String> rejected = Promise.reject(new IllegalStateException());
+        assertTrue(rejected.isRejected());
+        assertFalse(rejected.cancel(true));
+    }
+
+    @Test
+    public void testCompletedPromisesDoNotSerializeCallbacks() throws Exception {
+        // unrelated users of the shared instance, the first one waits for the second
+        CountDownLatch released = new CountDownLatch(1);
+        Promise<Boolean> waiting = Promise.resolve().then(value -> released.await(1, TimeUnit.SECONDS));
+        Thread other = new Thread(() -> Promise.resolve().then(value -> {
+            released.countDown();
+            return null;
+        }));
+        other.start();
+        other.join();
+        assertTrue(waiting.get(2, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testCompletedPromisesKeepCallbacksOrder() throws Exception {
+        List<Integer> order = Collections.synchronizedList(new ArrayList<>());
+        List<Promise<Boolean>> callbacks = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            int index = i;
+            Promise<Boolean> shared = i % 2 == 0 ? Promise.resolve(true) : Promise.resolve(false);
+            callbacks.add(shared.then(value -> order.add(index)));
+        }
+        Promise.all(callbacks).get(1, TimeUnit.SECONDS);
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i, (int) order.get(i));
+        }
+    }
+
+    @Test
+    public void testThenOnSettledPromise() throws Exception {
+        Promise<Integer> inline = Promise.resolve("four").thenSync(String::length);
+        assertTrue(inline.isDone());
+        assertEquals(4, (int) inline.get());
+
+        Promise<Integer> failed = Promise.resolve("four").thenSync(value -> {
+            throw new IllegalStateException();
+        });
+        assertTrue(failed.getCause() instanceof IllegalStateException);
+
+        assertEquals(5, (int) Promise.resolve("seven").then(String::length).get(1, TimeUnit.SECONDS));
+        assertEquals("value", Promise.resolve("value").catchHandle(cause -> "recovered").get(1, TimeUnit.SECONDS));
+        assertEquals("recovered", Promise.reject(new IllegalStateException()).catchHandle(cause -> "recovered").get(1, TimeUnit.SECONDS));
+    }
+
     @Test
     public void testThen() throws Exception {
         ArrayList<Integer> order = new ArrayList<>();
@@ -95,4 +319,393 @@ public class PromiseTest {
 
         assertEquals("OK", result);
     }
+
+    @Test
+    public void testConcurrentHandlersRegistration() throws Exception {
+        final int threads = 8;
+        final int perThread = 1000;
+
+        Deferred<Integer> deferred = Promise.defer();
+        Promise<Integer> promise = deferred.getPromise();
+        AtomicInteger called = new AtomicInteger();
+        CountDownLatch allCalled = new CountDownLatch(threads * perThread);
+        CountDownLatch start = new CountDownLatch(1);
+
+        Thread[] registering = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            registering[t] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException ignore) {
+                }
+                for (int i = 0; i < perThread; i++) {
+                    promise.onFulfill(value -> {
+                        called.incrementAndGet();
+                        allCalled.countDown();
+                    });
+                }
+            });
+            registering[t].start();
+        }
+
+        start.countDown();
+        deferred.resolve(42);
+
+        for (Thread thread : registering) {
+            thread.join();
+        }
+
+        assertTrue(allCalled.await(10, TimeUnit.SECONDS));
+        assertEquals(threads * perThread, called.get());
+        assertEquals(42, (int) promise.getValue());
+    }
+
+    @Test
+    public void testThenSync() throws Exception {
+        Deferred<Integer> deferred = Promise.defer();
+        Thread completing = Thread.currentThread();
+        AtomicInteger sameThread = new AtomicInteger();
+
+        Promise<Integer> promise = deferred.getPromise();
+        for (int i = 0; i < 10; i++) {
+            promise = promise.thenSync(value -> {
+                if (Thread.currentThread() == completing) {
+                    sameThread.incrementAndGet();
+                }
+                return value + 1;
+            });
+        }
+
+        deferred.resolve(0);
+
+        assertEquals(10, (int) promise.getResult());
+        assertEquals(10, sameThread.get());
+    }
+
+    @Test
+    public void testSynchronousChainDeeperThanMaxDepth() throws Exception {
+        Deferred<Integer> deferred = Promise.defer();
+        Promise<Integer> promise = deferred.getPromise().setSynchronous(true);
+        int length = Promise.getSynchronousMaxDepth() * 4;
+        for (int i = 0; i < length; i++) {
+            promise = promise.then(value -> value + 1);
+        }
+
+        deferred.resolve(0);
+
+        assertEquals(length, (int) promise.getResult());
+    }
+
+    @Test
+    public void testRecursiveThenAwaitSync() throws Exception {
+        assertEquals(0, (int) countdown(20000, true).getResult());
+    }
+
+    @Test
+    public void testRecursiveThenAwait() throws Exception {
+        assertEquals(0, (int) countdown(2000, false).getResult());
+    }
+
+    @Test
+    public void testAwaitByManyThreads() throws Exception {
+        Deferred<String> deferred = Promise.defer();
+        Promise<String> promise = deferred.getPromise();
+
+        long start = System.nanoTime();
+        try {
+            promise.await(20, TimeUnit.MILLISECONDS);
+            fail();
+        } catch (TimeoutException expected) {
+            assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(20));
+        }
+
+        int count = 50;
+        CountDownLatch awaited = new CountDownLatch(count);
+        for (int i = 0; i < count; i++) {
+            Thread thread = new Thread(() -> {
+                if ("value".equals(promise.awaitUnterruptibly().getValue())) {
+                    awaited.countDown();
+                }
+            });
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        Sleep.unchecked(50);
+        deferred.resolve("value");
+        assertTrue(awaited.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testAwaitInterrupted() throws Exception {
+        Promise<String> promise = Promise.<String>defer().getPromise();
+        Thread.currentThread().interrupt();
+        try {
+            promise.await();
+            fail();
+        } catch (InterruptedException expected) {
+        }
+        assertFalse(Thread.currentThread().isInterrupted());
+    }
+
+    @Test
+    public void testAwaitMany() throws Exception {
+        Deferred<String> first = Promise.defer();
+        Deferred<String> second = Promise.defer();
+        Promise<String> resolved = Promise.resolve("done");
+
+        try {
+            Promise.await(20, TimeUnit.MILLISECONDS, first.getPromise(), second.getPromise(), resolved);
+            fail();
+        } catch (TimeoutException expected) {
+        }
+        assertSame(resolved, Promise.awaitAny(first.getPromise(), resolved));
+
+        Async.schedule(() -> second.resolve("second"), 20, TimeUnit.MILLISECONDS);
+        assertSame(second.getPromise(), Promise.awaitAny(1, TimeUnit.SECONDS, first.getPromise(), second.getPromise()));
+        Promise.awaitSome(2, 1, TimeUnit.SECONDS, first.getPromise(), second.getPromise(), resolved);
+
+        Async.schedule(() -> first.reject(new IllegalStateException()), 20, TimeUnit.MILLISECONDS);
+        Promise.await(1, TimeUnit.SECONDS, first.getPromise(), second.getPromise(), resolved);
+        assertTrue(first.getPromise().isRejected());
+    }
+
+    @Test
+    public void testAwaitWithHugeTimeout() throws Exception {
+        // deadline parity depends on nanoTime, so a few rounds cover both
+        for (int i = 0; i < 8; i++) {
+            Deferred<String> single = Promise.defer();
+            Deferred<String> many = Promise.defer();
+            Async.schedule(() -> single.resolve("single"), 5, TimeUnit.MILLISECONDS);
+            Async.schedule(() -> many.resolve("many"), 5, TimeUnit.MILLISECONDS);
+            assertEquals("single", single.getPromise().get(Long.MAX_VALUE, TimeUnit.MILLISECONDS));
+            assertSame(many.getPromise(), Promise.awaitAny(Long.MAX_VALUE, TimeUnit.NANOSECONDS, many.getPromise()));
+        }
+    }
+
+    @Test
+    public void testAwaitManyLeavesNoHandlers() throws Exception {
+        Deferred<String> pending = Promise.defer();
+        Promise<String> promise = pending.getPromise();
+        Promise<String> resolved = Promise.resolve("done");
+        AtomicInteger called = new AtomicInteger();
+        // anonymous class, JOL cannot walk lambdas
+        promise.setSynchronous(true).onFulfill(new Callback<String>() {
+            @Override
+            public void onCallback(String value) throws Exception {
+                called.incrementAndGet();
+            }
+        });
+        promise.toString();
+        long objects = GraphLayout.parseInstance(promise).totalCount();
+
+        for (int i = 0; i < 1000; i++) {
+            try {
+                Promise.awaitAny(1, TimeUnit.MICROSECONDS, promise);
+                fail();
+            } catch (TimeoutException expected) {
+            }
+            assertSame(resolved, Promise.awaitAny(promise, resolved));
+        }
+        assertEquals(objects, GraphLayout.parseInstance(promise).totalCount());
+
+        // other handlers are kept
+        pending.resolve("value");
+        assertEquals(1, called.get());
+    }
+
+    @Test
+    public void testResolveWithItself() throws Exception {
+        Deferred<Object> deferred = Promise.defer();
+        AtomicReference<Promise<Object>> self = new AtomicReference<>();
+        self.set(deferred.getPromise().then(value -> self.get()));
+        deferred.resolve("x");
+        assertTrue(self.get().isRejected());
+        assertTrue(self.get().getCause() instanceof IllegalStateException);
+    }
+
+    private static Promise<Integer> countdown(int n, boolean synchronous) {
+        if (n == 0) {
+            return Promise.resolve(0);
+        }
+        if (synchronous) {
+            return Promise.resolve(n - 1).thenAwaitSync(left -> countdown(left, true));
+        }
+        return Promise.resolve(n - 1).thenAwait(left -> countdown(left, false));
+    }
+
+    @Test
+    public void testCancelInterruptsTask() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch interrupted = new CountDownLatch(1);
+        Promise<Object> promise = Promise.execute(() -> {
+            started.countDown();
+            try {
+                Sleep.interruptable(10000);
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+            }
+            return "finished";
+        });
+
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        assertTrue(promise.cancel(true));
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+        assertTrue(promise.isCancelled());
+        assertTrue(promise.isDone());
+        assertFalse(promise.cancel(true));
+
+        try {
+            promise.get();
+            fail();
+        } catch (CancellationException expected) {
+        }
+    }
+
+    @Test
+    public void testCancelPropagatesUpstream() throws Exception {
+        Deferred<Integer> deferred = Promise.defer();
+        Promise<Integer> source = deferred.getPromise();
+        Promise<Integer> first = source.then(value -> value + 1);
+        Promise<Integer> second = source.then(value -> value + 2);
+
+        assertTrue(first.cancel(false));
+        assertFalse(source.isCancelled());
+
+        Promise<Integer> derived = second.then(value -> value * 2);
+        assertTrue(derived.cancel(false));
+        assertTrue(second.isCancelled());
+        assertTrue(source.isCancelled());
+
+        deferred.resolve(1); // ignored, promise has been cancelled
+    }
+
+    @Test
+    public void testCancelDoesNotReachSharedInnerPromise() throws Exception {
+        Deferred<Integer> source = Promise.defer();
+        Promise<Integer> inner = source.getPromise().then(value -> value * 2);
+        Promise<Integer> other = inner.then(value -> value + 1);
+        Deferred<Integer> trigger = Promise.defer();
+        Promise<Integer> outer = trigger.getPromise().thenAwait(value -> inner);
+
+        trigger.resolve(1);
+        Sleep.unchecked(50);
+        assertTrue(outer.cancel(true));
+        // inner promise still has another dependent
+        assertFalse(inner.isCancelled());
+        assertFalse(source.getPromise().isCancelled());
+
+        source.resolve(21);
+        assertEquals(42, (int) inner.get(1, TimeUnit.SECONDS));
+        assertEquals(43, (int) other.get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testTimeoutDoesNotReachSharedInnerPromise() throws Exception {
+        Deferred<Integer> source = Promise.defer();
+        Promise<Integer> inner = source.getPromise().then(value -> value * 2);
+        Promise<Integer> other = inner.then(value -> value + 1);
+        Deferred<Integer> trigger = Promise.defer();
+        Promise<Integer> outer = trigger.getPromise().thenAwait(value -> inner).completeOnTimeout(-1, 10, TimeUnit.MILLISECONDS);
+
+        trigger.resolve(1);
+        assertEquals(-1, (int) outer.get(1, TimeUnit.SECONDS));
+        assertFalse(inner.isDone());
+
+        source.resolve(21);
+        assertEquals(42, (int) inner.get(1, TimeUnit.SECONDS));
+        assertEquals(43, (int) other.get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testCancelBoundFuture() throws Exception {
+        CompletableFuture<String> future = new CompletableFuture<>();
+        Promise<String> promise = Promise.from(future);
+        assertTrue(promise.cancel(true));
+        assertTrue(future.isCancelled());
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+        Deferred<String> deferred = Promise.defer();
+        Promise<String> promise = deferred.getPromise().timeout(50, TimeUnit.MILLISECONDS);
+        assertTrue(promise.isRejected());
+        assertTrue(promise.getCause() instanceof TimeoutException);
+        assertFalse(promise.isCancelled());
+        deferred.resolve("late"); // ignored, promise has already timed out
+    }
+
+    @Test
+    public void testCompleteOnTimeout() throws Exception {
+        Deferred<String> slow = Promise.defer();
+        assertEquals("fallback", slow.getPromise().completeOnTimeout("fallback", 50).getResult());
+
+        Deferred<String> fast = Promise.defer();
+        Promise<String> promise = fast.getPromise().completeOnTimeout("fallback", 50);
+        fast.resolve("value");
+        Sleep.unchecked(100);
+        assertEquals("value", promise.getResult());
+    }
+
+    @Test
+    public void testCompletionStageInterop() throws Exception {
+        CompletableFuture<String> source = new CompletableFuture<>();
+        Promise<String> promise = Promise.from(source);
+        CompletableFuture<Integer> target = promise.then(String::length).toCompletableFuture();
+        source.complete("four");
+        assertEquals(4, (int) target.get(1, TimeUnit.SECONDS));
+
+        Deferred<String> deferred = Promise.defer();
+        assertSame(deferred.getPromise(), Promise.fromCompletionStage(deferred.getPromise().toCompletionStage()));
+
+        Deferred<String> cancelled = Promise.defer();
+        CompletableFuture<String> view = cancelled.getPromise().toCompletableFuture();
+        assertTrue(view.cancel(false));
+        assertTrue(cancelled.getPromise().isCancelled());
+    }
+
+    @Test
+    public void testPromiseNotSubclassable() throws Exception {
+        assertTrue(Modifier.isFinal(PromiseTask.class.getModifiers()));
+        try {
+            new Promise<String>((resolve, reject) -> resolve.onCallback("value")) {
+            };
+            fail();
+        } catch (UnsupportedOperationException expected) {
+        }
+    }
+
+    @Test
+    public void testPromiseTask() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            PromiseTask<String> task = new PromiseTask<>(String::toUpperCase, "seven");
+            executor.execute(task);
+            assertEquals("SEVEN", task.get(1, TimeUnit.SECONDS));
+            assertEquals(5, (int) task.then(String::length).get(1, TimeUnit.SECONDS));
+
+            CountDownLatch started = new CountDownLatch(1);
+            AtomicBoolean interrupted = new AtomicBoolean();
+            PromiseTask<Object> blocking = new PromiseTask<>(() -> {
+                started.countDown();
+                try {
+                    Thread.sleep(10000);
+                } catch (InterruptedException e) {
+                    interrupted.set(true);
+                }
+            }, null);
+            executor.execute(blocking);
+            started.await();
+            assertTrue(blocking.cancel(true));
+            assertTrue(blocking.isCancelled());
+
+            // worker has been interrupted and is reusable for the next task
+            PromiseTask<Boolean> next = new PromiseTask<>(() -> Thread.currentThread().isInterrupted());
+            executor.execute(next);
+            assertFalse(next.get(1, TimeUnit.SECONDS));
+            assertTrue(interrupted.get());
+        } finally {
+            executor.shutdown();
+        }
+    }
 }
@@ -0,0 +1,71 @@
+package com.sproutigy.commons.async;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class RetryTest {
+
+    @Test
+    public void testSucceedsAfterRetries() throws Exception {
+        Retry retry = new Retry(5).setBackoff(5, 50, TimeUnit.MILLISECONDS);
+        AtomicInteger attempts = new AtomicInteger();
+
+        Promise<String> result = retry.execute(() -> {
+            if (attempts.incrementAndGet() < 3) {
+                throw new IOException("temporary");
+            }
+            return "done";
+        });
+
+        assertEquals("done", result.get(1, TimeUnit.SECONDS));
+        assertEquals(3, retry.getAttempts());
+        assertEquals(2, retry.getRetries());
+        assertEquals(0, retry.getExhausted());
+    }
+
+    @Test
+    public void testExhausted() throws Exception {
+        Retry retry = new Retry(3).setBackoff(1, 10, TimeUnit.MILLISECONDS).setJitter(Retry.Jitter.Decorrelated);
+        Promise<String> result = retry.submit(() -> Promise.reject(new IOException("down")));
+
+        assertTrue(result.awaitUnterruptibly().getCause() instanceof IOException);
+        assertEquals(3, retry.getAttempts());
+        assertEquals(1, retry.getExhausted());
+    }
+
+    @Test
+    public void testNotRetryable() throws Exception {
+        Retry retry = new Retry(5).setBackoff(1, 10, TimeUnit.MILLISECONDS)
+                .setRetryOn(cause -> cause instanceof IOException);
+        Promise<String> result = retry.submit(() -> Promise.reject(new IllegalArgumentException()));
+
+        assertTrue(result.awaitUnterruptibly().getCause() instanceof IllegalArgumentException);
+        assertEquals(1, retry.getAttempts());
+    }
+
+    @Test
+    public void testDeadline() throws Exception {
+        Retry retry = new Retry(100).setBackoff(10, 10, TimeUnit.MILLISECONDS).setJitter(Retry.Jitter.None)
+                .setDeadline(100, TimeUnit.MILLISECONDS);
+        Deferred<String> hanging = Promise.defer();
+        AtomicInteger attempts = new AtomicInteger();
+
+        Promise<String> result = retry.submit(() -> {
+            if (attempts.incrementAndGet() == 1) {
+                return Promise.reject(new IOException("failed"));
+            }
+            return hanging.getPromise();
+        });
+
+        assertTrue(result.awaitUnterruptibly().getCause() instanceof TimeoutException);
+        assertEquals(2, attempts.get());
+        hanging.getPromise().awaitUnterruptibly();
+        assertTrue(hanging.getPromise().isCancelled());
+    }
+}
@@ -0,0 +1,110 @@
+package com.sproutigy.commons.async;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class SerialExecutorTest {
+
+    @Test
+    public void testSerialAndOrderedPerProducer() throws Exception {
+        final int producers = 8;
+        final int tasks = 10000;
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        final SerialExecutor serial = new SerialExecutor(pool, 16);
+        final AtomicInteger active = new AtomicInteger();
+        final AtomicBoolean overlapped = new AtomicBoolean();
+        final int[] last = new int[producers];
+        Arrays.fill(last, -1);
+        final List<String> errors = Collections.synchronizedList(new ArrayList<String>());
+        final CountDownLatch done = new CountDownLatch(producers * tasks);
+
+        try {
+            for (int p = 0; p < producers; p++) {
+                final int producer = p;
+                pool.execute(() -> {
+                    for (int i = 0; i < tasks; i++) {
+                        final int sequence = i;
+                        serial.execute(() -> {
+                            if (active.incrementAndGet() != 1) {
+                                overlapped.set(true);
+                            }
+                            if (last[producer] != sequence - 1) {
+                                errors.add(producer + ": " + last[producer] + " -> " + sequence);
+                            }
+                            last[producer] = sequence;
+                            active.decrementAndGet();
+                            done.countDown();
+                        });
+                    }
+                });
+            }
+
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+            assertFalse(overlapped.get());
+            assertEquals(Collections.emptyList(), errors);
+            assertEquals(0, serial.getQueueSize());
+            assertTrue(serial.getMaxQueueSize() > 0);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testBatchLimitYieldsThread() throws Exception {
+        ExecutorService thread = Executors.newSingleThreadExecutor();
+        SerialExecutor serial = new SerialExecutor(thread, 2);
+        final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        final CountDownLatch release = new CountDownLatch(1);
+
+        try {
+            thread.execute(() -> {
+                try {
+                    release.await();
+                } catch (InterruptedException ignore) {
+                }
+            });
+            for (int i = 0; i < 5; i++) {
+                final String name = "s" + i;
+                serial.execute(() -> order.add(name));
+            }
+            thread.execute(() -> order.add("other"));
+            assertEquals(5, serial.getQueueSize());
+            release.countDown();
+
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+            while (serial.getExecutedCount() < 5 && System.nanoTime() < deadline) {
+                Sleep.unchecked(1);
+            }
+            assertEquals(Arrays.asList("s0", "s1", "other", "s2", "s3", "s4"), order);
+            assertEquals(5, serial.getExecutedCount());
+            assertEquals(2, serial.getYieldCount());
+            assertEquals(5, serial.getMaxQueueSize());
+            assertEquals(0, serial.getQueueSize());
+        } finally {
+            thread.shutdown();
+        }
+    }
+
+    @Test
+    public void testFailingTaskDoesNotStopQueue() throws Exception {
+        SerialExecutor serial = new SerialExecutor(Async.getService());
+        final CountDownLatch done = new CountDownLatch(1);
+        serial.execute(() -> {
+            throw new IllegalStateException("failed");
+        });
+        serial.execute(done::countDown);
+        assertTrue(done.await(1, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,50 @@
+package com.sproutigy.commons.async;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class SleepTest {
+
+    @Test
+    public void testInterruptableSleepsGivenTime() throws Exception {
+        long start = System.nanoTime();
+        Sleep.interruptable(20, TimeUnit.MILLISECONDS);
+        long elapsed = System.nanoTime() - start;
+        assertTrue(elapsed >= TimeUnit.MILLISECONDS.toNanos(20));
+        assertTrue(elapsed < TimeUnit.SECONDS.toNanos(5));
+    }
+
+    @Test
+    public void testAsync() throws Exception {
+        long start = System.nanoTime();
+        Promise<Void> sleep = Sleep.async(30, TimeUnit.MILLISECONDS);
+        assertFalse(sleep.isDone());
+        sleep.get(1, TimeUnit.SECONDS);
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(30));
+
+        assertEquals("value", Promise.delay("value", 10, TimeUnit.MILLISECONDS).get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testAsyncCancel() throws Exception {
+        Promise<Void> sleep = Sleep.async(10, TimeUnit.SECONDS);
+        assertTrue(sleep.cancel(false));
+        assertTrue(sleep.isCancelled());
+    }
+
+    @Test
+    public void testPreciseUntil() throws Exception {
+        long period = TimeUnit.MICROSECONDS.toNanos(200);
+        long start = System.nanoTime();
+        long next = start;
+        for (int i = 0; i < 50; i++) {
+            next += period;
+            Sleep.preciseUntil(next);
+            assertTrue(System.nanoTime() >= next);
+        }
+        assertTrue(System.nanoTime() - start >= 50 * period);
+    }
+}
@@ -0,0 +1,53 @@
+package com.sproutigy.commons.async;
+
+import org.junit.Test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+// slf4j is an optional dependency, the library has to work with only its own classes on the classpath
+public class WithoutSlf4jTest {
+
+    @Test
+    public void testPromiseWithoutSlf4j() throws Exception {
+        URL classes = Promise.class.getProtectionDomain().getCodeSource().getLocation();
+        try (URLClassLoader loader = new URLClassLoader(new URL[]{classes}, ClassLoader.getSystemClassLoader().getParent())) {
+            try {
+                loader.loadClass("org.slf4j.Logger");
+                fail("slf4j visible to the isolated class loader");
+            } catch (ClassNotFoundException expected) {
+            }
+
+            Class<?> promiseClass = Class.forName(Promise.class.getName(), true, loader);
+            Class<?> transformClass = loader.loadClass(Transform.class.getName());
+
+            Callable<String> task = new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    return "done";
+                }
+            };
+            Object transform = Proxy.newProxyInstance(loader, new Class[]{transformClass}, new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                    if (method.getName().equals("transform")) {
+                        return args[0] + "!";
+                    }
+                    return method.invoke(this, args);
+                }
+            });
+
+            // executed task, serial callback dispatch and awaiting
+            Object executed = promiseClass.getMethod("execute", Callable.class).invoke(null, task);
+            Object transformed = promiseClass.getMethod("then", transformClass).invoke(executed, transform);
+            assertEquals("done!", promiseClass.getMethod("get", long.class, TimeUnit.class).invoke(transformed, 1L, TimeUnit.SECONDS));
+        }
+    }
+}
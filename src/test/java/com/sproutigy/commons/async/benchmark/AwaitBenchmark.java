@@ -0,0 +1,61 @@
+package com.sproutigy.commons.async.benchmark;
+
+import com.sproutigy.commons.async.Deferred;
+import com.sproutigy.commons.async.Promise;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Compares awaiting a batch of promises one by one with the single-countdown Promise.await(Promise...).
+ * Run with: mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.sproutigy.commons.async.benchmark.AwaitBenchmark
+ */
+public class AwaitBenchmark {
+
+    private static final int BATCH = 200;
+    private static final int BATCHES = 5000;
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) throws Exception {
+        ExecutorService resolvers = Executors.newFixedThreadPool(Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+
+        for (int round = 0; round < ROUNDS; round++) {
+            System.out.println("Round " + (round + 1));
+            report("looping await()", run(resolvers, false));
+            report("Promise.await(Promise...)", run(resolvers, true));
+        }
+
+        resolvers.shutdown();
+    }
+
+    private static long run(ExecutorService resolvers, boolean aggregate) throws InterruptedException {
+        Promise<?>[] promises = new Promise<?>[BATCH];
+        long start = System.nanoTime();
+        for (int batch = 0; batch < BATCHES; batch++) {
+            for (int i = 0; i < BATCH; i++) {
+                final Deferred<Integer> deferred = Promise.defer();
+                final int value = i;
+                promises[i] = deferred.getPromise();
+                resolvers.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        deferred.resolve(value);
+                    }
+                });
+            }
+
+            if (aggregate) {
+                Promise.await(promises);
+            } else {
+                for (Promise<?> promise : promises) {
+                    promise.await();
+                }
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static void report(String name, long nanos) {
+        System.out.printf("%s: %.0f batches/s (%.1f us/batch of %d)%n", name, BATCHES / (nanos / 1e9), nanos / (double) BATCHES / 1e3, BATCH);
+    }
+}
@@ -0,0 +1,63 @@
+package com.sproutigy.commons.async.benchmark;
+
+import com.sproutigy.commons.async.Async;
+import com.sproutigy.commons.async.Promise;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Measures heap allocated per Promise.execute(Callable) by the submitting and the executing thread.
+ * Run with: mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.sproutigy.commons.async.benchmark.ExecuteAllocationBenchmark
+ */
+public class ExecuteAllocationBenchmark {
+
+    private static final int BATCH = 1000;
+    private static final int BATCHES = 2000;
+    private static final int ROUNDS = 5;
+
+    private static final Callable<Integer> TASK = new Callable<Integer>() {
+        @Override
+        public Integer call() throws Exception {
+            return 1;
+        }
+    };
+
+    public static void main(String[] args) throws Exception {
+        // single worker completes tasks in submission order, so awaiting the last one drains a batch
+        ExecutorService worker = Executors.newSingleThreadExecutor();
+        Async.useExecutor(worker);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+        for (int round = 0; round < ROUNDS; round++) {
+            long before = allocated(threads);
+            long start = System.nanoTime();
+            for (int batch = 0; batch < BATCHES; batch++) {
+                Promise<Integer> last = null;
+                for (int i = 0; i < BATCH; i++) {
+                    last = Promise.execute(TASK);
+                }
+                last.await();
+            }
+            long nanos = System.nanoTime() - start;
+            long bytes = allocated(threads) - before;
+            long tasks = (long) BATCH * BATCHES;
+            System.out.printf("Round %d: %.1f bytes/task, %.1f MB/s, %.0f tasks/s%n", round + 1,
+                    bytes / (double) tasks, bytes / (nanos / 1e9) / 1e6, tasks / (nanos / 1e9));
+        }
+
+        worker.shutdown();
+    }
+
+    private static long allocated(com.sun.management.ThreadMXBean threads) {
+        long sum = 0;
+        for (long bytes : threads.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+            if (bytes > 0) {
+                sum += bytes;
+            }
+        }
+        return sum;
+    }
+}
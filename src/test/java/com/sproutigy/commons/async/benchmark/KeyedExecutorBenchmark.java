@@ -0,0 +1,71 @@
+package com.sproutigy.commons.async.benchmark;
+
+import com.sproutigy.commons.async.KeyedExecutor;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Throughput of KeyedExecutor with a queue per key and with striping across key cardinalities.
+ * Run with: mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.sproutigy.commons.async.benchmark.KeyedExecutorBenchmark
+ */
+public class KeyedExecutorBenchmark {
+
+    private static final int PRODUCERS = 4;
+    private static final int TASKS_PER_PRODUCER = 500000;
+    private static final int STRIPES = 64;
+    private static final int[] CARDINALITIES = {1, 16, 1024, 1000000};
+    private static final int ROUNDS = 3;
+
+    public static void main(String[] args) throws Exception {
+        int threads = Runtime.getRuntime().availableProcessors();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        ExecutorService producers = Executors.newFixedThreadPool(PRODUCERS);
+
+        for (int round = 0; round < ROUNDS; round++) {
+            System.out.println("Round " + (round + 1));
+            for (int keys : CARDINALITIES) {
+                report("per key, " + keys + " keys", run(new KeyedExecutor(pool), producers, keys));
+                report(STRIPES + " stripes, " + keys + " keys", run(new KeyedExecutor(pool, STRIPES), producers, keys));
+            }
+        }
+
+        producers.shutdown();
+        pool.shutdown();
+    }
+
+    private static long run(final KeyedExecutor keyed, ExecutorService producers, final int keys) throws InterruptedException {
+        final LongAdder done = new LongAdder();
+        final Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                done.increment();
+            }
+        };
+
+        long start = System.nanoTime();
+        for (int p = 0; p < PRODUCERS; p++) {
+            final int offset = p;
+            producers.execute(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < TASKS_PER_PRODUCER; i++) {
+                        keyed.execute((i * PRODUCERS + offset) % keys, task);
+                    }
+                }
+            });
+        }
+
+        long total = (long) PRODUCERS * TASKS_PER_PRODUCER;
+        while (done.sum() < total) {
+            Thread.sleep(1);
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static void report(String name, long nanos) {
+        long total = (long) PRODUCERS * TASKS_PER_PRODUCER;
+        System.out.printf("%s: %.0f tasks/s%n", name, total / (nanos / 1e9));
+    }
+}
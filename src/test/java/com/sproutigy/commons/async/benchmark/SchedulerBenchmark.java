@@ -0,0 +1,109 @@
+package com.sproutigy.commons.async.benchmark;
+
+import com.sproutigy.commons.async.HashedWheelScheduler;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compares ScheduledThreadPoolExecutor with HashedWheelScheduler
+ * for the timeout use case (schedule and cancel before expiration) and for mass expiration.
+ * Run with: mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.sproutigy.commons.async.benchmark.SchedulerBenchmark
+ */
+public class SchedulerBenchmark {
+
+    private static final int TIMEOUTS = 1000000;
+    private static final int EXPIRING = 200000;
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) throws Exception {
+        ExecutorService dispatch = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1);
+        executor.setRemoveOnCancelPolicy(true);
+        HashedWheelScheduler wheel = new HashedWheelScheduler(dispatch);
+
+        for (int round = 0; round < ROUNDS; round++) {
+            System.out.println("Round " + (round + 1));
+            report("ScheduledThreadPoolExecutor schedule+cancel", TIMEOUTS, scheduleAndCancel(new Scheduler() {
+                @Override
+                public ScheduledFuture<?> schedule(Runnable runnable, long delay, TimeUnit unit) {
+                    return executor.schedule(runnable, delay, unit);
+                }
+            }));
+            report("HashedWheelScheduler schedule+cancel", TIMEOUTS, scheduleAndCancel(new Scheduler() {
+                @Override
+                public ScheduledFuture<?> schedule(Runnable runnable, long delay, TimeUnit unit) {
+                    return wheel.schedule(runnable, delay, unit);
+                }
+            }));
+        }
+
+        expire("ScheduledThreadPoolExecutor", new Scheduler() {
+            @Override
+            public ScheduledFuture<?> schedule(final Runnable runnable, long delay, TimeUnit unit) {
+                // same dispatch hop as Async.schedule does
+                return executor.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        dispatch.execute(runnable);
+                    }
+                }, delay, unit);
+            }
+        });
+        expire("HashedWheelScheduler", new Scheduler() {
+            @Override
+            public ScheduledFuture<?> schedule(Runnable runnable, long delay, TimeUnit unit) {
+                return wheel.schedule(runnable, delay, unit);
+            }
+        });
+
+        executor.shutdown();
+        wheel.shutdown();
+        dispatch.shutdown();
+    }
+
+    private interface Scheduler {
+        ScheduledFuture<?> schedule(Runnable runnable, long delay, TimeUnit unit);
+    }
+
+    private static long scheduleAndCancel(Scheduler scheduler) {
+        Runnable noop = new Runnable() {
+            @Override
+            public void run() {
+            }
+        };
+        long start = System.nanoTime();
+        for (int i = 0; i < TIMEOUTS; i++) {
+            scheduler.schedule(noop, 30000 + (i & 1023), TimeUnit.MILLISECONDS).cancel(false);
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static void expire(String name, Scheduler scheduler) throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(EXPIRING);
+        final AtomicLong lateness = new AtomicLong();
+        final long delayNanos = TimeUnit.MILLISECONDS.toNanos(500);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < EXPIRING; i++) {
+            final long deadline = System.nanoTime() + delayNanos;
+            scheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    lateness.addAndGet(System.nanoTime() - deadline);
+                    latch.countDown();
+                }
+            }, delayNanos, TimeUnit.NANOSECONDS);
+        }
+        long scheduled = System.nanoTime() - start;
+        latch.await();
+
+        System.out.printf("%s: scheduled %d expiring timeouts in %.1f ms, mean lateness %.2f ms%n",
+                name, EXPIRING, scheduled / 1e6, lateness.get() / (double) EXPIRING / 1e6);
+    }
+
+    private static void report(String name, int operations, long nanos) {
+        System.out.printf("%s: %.0f ops/s (%.1f ns/op)%n", name, operations / (nanos / 1e9), nanos / (double) operations);
+    }
+}